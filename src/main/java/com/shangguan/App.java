@@ -2,11 +2,6 @@ package com.shangguan;
 
 import com.shangguan.utils.GeoToolsImageCompressor;
 import com.shangguan.utils.TifToPngConverter;
-import javax.imageio.ImageIO;
-import java.awt.*;
-import java.awt.image.BufferedImage;
-import java.io.File;
-import java.io.IOException;
 
 import java.io.File;
 
@@ -24,25 +19,15 @@ public class App {
 //            String outputJpg = "D:\\QgisData\\png\\GNDVI_local.jpg"; // 输出路径
 //            TifToPngConverter.convertSingleFile(localTif, outputPng);
 
-            // 输出 PNG（尽量压缩，无损）
-            GeoToolsImageCompressor.compressTifToImage(localTif, outputPng, "png", 1.0f);
-
-
-            File input = new File(outputPng);
-            BufferedImage originalImage = ImageIO.read(input);
+            double minValue = 0;  // GNDVI 色带范围
+            double maxValue = 1;
 
-            // 缩小到原图的 50%
-            int width = originalImage.getWidth() / 8;
-            int height = originalImage.getHeight() / 8;
+            // 拉伸着色输出 PNG：延迟算子链按 tile 拉取，不生成整幅中间图像
+            GeoToolsImageCompressor.renderColorizedImage(localTif, outputPng, "png", 1.0f, minValue, maxValue, 1);
 
-            BufferedImage scaledImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
-            Graphics2D g2d = scaledImage.createGraphics();
-            g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-            g2d.drawImage(originalImage, 0, 0, width, height, null);
-            g2d.dispose();
 
-            File output = new File(outputPngyasuo);
-            ImageIO.write(scaledImage, "png", output);
+            // 缩小到原图的 1/8：缩小在同一条算子链中完成，不再单独做一遍全图重采样
+            GeoToolsImageCompressor.renderColorizedImage(localTif, outputPngyasuo, "png", 1.0f, minValue, maxValue, 8);
 
 
 //            // 输出 JPEG（有损压缩，0.6质量）
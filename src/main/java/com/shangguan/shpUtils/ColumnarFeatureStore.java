@@ -0,0 +1,684 @@
+package com.shangguan.shpUtils;
+
+import org.geotools.geometry.jts.JTSFactoryFinder;
+import org.locationtech.jts.geom.*;
+import org.locationtech.jts.geom.impl.PackedCoordinateSequence;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+
+/**
+ * @Author: shangguan
+ * @CreateTime: 2025-07-30
+ * @Description: 列式内存要素存储，用于常驻内存的参考图层，替代 List&lt;SimpleFeature&gt;。
+ * <p>
+ * 所有坐标按 x,y 交错存放在一个 double[] 中，要素 → 组成部分 → 环 → 坐标之间用偏移数组定位，另存每个要素的外包矩形；
+ * 属性按列存为 int[]、long[]、double[] 等基本类型数组，字符串按字典编码，空值用位图记录。
+ * 几何只在 {@link #getGeometry(int)} 时按需构造 JTS 对象；按列和按范围的扫描在 ForkJoin 公共池上并行执行。
+ * 只保留 x,y 坐标，空几何按 null 处理。构建完成后只读，可被多个线程共享。
+ */
+public class ColumnarFeatureStore {
+
+    private static final GeometryFactory GEOMETRY_FACTORY = JTSFactoryFinder.getGeometryFactory(null);
+
+    // 要素几何类型
+    private static final byte NULL = 0;
+    private static final byte POINT = 1;
+    private static final byte LINESTRING = 2;
+    private static final byte POLYGON = 3;
+    private static final byte MULTIPOINT = 4;
+    private static final byte MULTILINESTRING = 5;
+    private static final byte MULTIPOLYGON = 6;
+    private static final byte COLLECTION = 7;
+
+    private final int size;
+    private final CoordinateReferenceSystem crs;
+    private final byte[] geometryTypes;
+    private final int[] featureParts;   // 要素 i 的组成部分为 [featureParts[i], featureParts[i+1])
+    private final byte[] partTypes;     // 组成部分类型：POINT / LINESTRING / POLYGON
+    private final int[] partRings;      // 组成部分 p 的环为 [partRings[p], partRings[p+1])
+    private final int[] ringCoords;     // 环 r 的坐标为 [ringCoords[r], ringCoords[r+1])
+    private final double[] xy;
+    private final double[] envelopes;   // 每个要素 minX,minY,maxX,maxY，空几何为 NaN
+    private final Map<String, Column> columns;
+
+    private ColumnarFeatureStore(Builder b) {
+        this.size = b.size;
+        this.crs = b.crs;
+        this.geometryTypes = Arrays.copyOf(b.geometryTypes.data, b.size);
+        this.featureParts = b.featureParts.toArray();
+        this.partTypes = Arrays.copyOf(b.partTypes.data, b.partTypes.size);
+        this.partRings = b.partRings.toArray();
+        this.ringCoords = b.ringCoords.toArray();
+        this.xy = b.xy.toArray();
+        this.envelopes = b.envelopes.toArray();
+        Map<String, Column> cols = new LinkedHashMap<>();
+        for (Column column : b.columns) {
+            column.trim(b.size);
+            cols.put(column.name, column);
+        }
+        this.columns = Collections.unmodifiableMap(cols);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public CoordinateReferenceSystem getCrs() {
+        return crs;
+    }
+
+    public Set<String> getColumnNames() {
+        return columns.keySet();
+    }
+
+    /**
+     * 按名称取列
+     *
+     * @throws IllegalArgumentException 列不存在时
+     */
+    public Column column(String name) {
+        Column column = columns.get(name);
+        if (column == null) {
+            throw new IllegalArgumentException("列不存在: " + name);
+        }
+        return column;
+    }
+
+    public IntColumn intColumn(String name) {
+        return (IntColumn) column(name);
+    }
+
+    public LongColumn longColumn(String name) {
+        return (LongColumn) column(name);
+    }
+
+    public DoubleColumn doubleColumn(String name) {
+        return (DoubleColumn) column(name);
+    }
+
+    public StringColumn stringColumn(String name) {
+        return (StringColumn) column(name);
+    }
+
+    public Object getValue(int row, String columnName) {
+        return column(columnName).get(row);
+    }
+
+    /**
+     * 一行的全部属性
+     */
+    public Map<String, Object> getAttributes(int row) {
+        Map<String, Object> attrs = new LinkedHashMap<>();
+        for (Column column : columns.values()) {
+            attrs.put(column.name, column.get(row));
+        }
+        return attrs;
+    }
+
+    /**
+     * 要素外包矩形，空几何返回 null；不构造几何
+     */
+    public Envelope getEnvelope(int row) {
+        int o = row * 4;
+        if (Double.isNaN(envelopes[o])) {
+            return null;
+        }
+        return new Envelope(envelopes[o], envelopes[o + 2], envelopes[o + 1], envelopes[o + 3]);
+    }
+
+    /**
+     * 按需构造要素的 JTS 几何，每次调用返回新对象
+     */
+    public Geometry getGeometry(int row) {
+        int p0 = featureParts[row];
+        int p1 = featureParts[row + 1];
+        switch (geometryTypes[row]) {
+            case POINT:
+                return point(p0);
+            case LINESTRING:
+                return line(p0);
+            case POLYGON:
+                return polygon(p0);
+            case MULTIPOINT: {
+                Point[] points = new Point[p1 - p0];
+                for (int p = p0; p < p1; p++) points[p - p0] = point(p);
+                return GEOMETRY_FACTORY.createMultiPoint(points);
+            }
+            case MULTILINESTRING: {
+                LineString[] lines = new LineString[p1 - p0];
+                for (int p = p0; p < p1; p++) lines[p - p0] = line(p);
+                return GEOMETRY_FACTORY.createMultiLineString(lines);
+            }
+            case MULTIPOLYGON: {
+                Polygon[] polygons = new Polygon[p1 - p0];
+                for (int p = p0; p < p1; p++) polygons[p - p0] = polygon(p);
+                return GEOMETRY_FACTORY.createMultiPolygon(polygons);
+            }
+            case COLLECTION: {
+                Geometry[] parts = new Geometry[p1 - p0];
+                for (int p = p0; p < p1; p++) {
+                    parts[p - p0] = partTypes[p] == POINT ? point(p) : partTypes[p] == LINESTRING ? line(p) : polygon(p);
+                }
+                return GEOMETRY_FACTORY.createGeometryCollection(parts);
+            }
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * 并行扫描，返回满足条件的行号（升序）
+     */
+    public int[] filter(IntPredicate predicate) {
+        return IntStream.range(0, size).parallel().filter(predicate).toArray();
+    }
+
+    /**
+     * 并行扫描外包矩形，返回与查询范围相交的行号（升序）
+     */
+    public int[] queryEnvelope(Envelope query) {
+        double minX = query.getMinX(), minY = query.getMinY(), maxX = query.getMaxX(), maxY = query.getMaxY();
+        return filter(row -> {
+            int o = row * 4;
+            // NaN 的比较结果为 false，空几何自然被排除
+            return envelopes[o] <= maxX && envelopes[o + 2] >= minX && envelopes[o + 1] <= maxY && envelopes[o + 3] >= minY;
+        });
+    }
+
+    /**
+     * 几何与属性数组占用的大致字节数
+     */
+    public long estimatedBytes() {
+        long bytes = geometryTypes.length + partTypes.length
+                + 4L * (featureParts.length + partRings.length + ringCoords.length)
+                + 8L * (xy.length + envelopes.length);
+        for (Column column : columns.values()) {
+            bytes += column.estimatedBytes();
+        }
+        return bytes;
+    }
+
+    @Override
+    public String toString() {
+        return "ColumnarFeatureStore[" + size + " features, " + columns.size() + " columns, "
+                + (xy.length / 2) + " coordinates, ~" + (estimatedBytes() >> 10) + "KB]";
+    }
+
+    private Point point(int part) {
+        return GEOMETRY_FACTORY.createPoint(sequence(partRings[part]));
+    }
+
+    private LineString line(int part) {
+        return GEOMETRY_FACTORY.createLineString(sequence(partRings[part]));
+    }
+
+    private Polygon polygon(int part) {
+        int r0 = partRings[part];
+        int r1 = partRings[part + 1];
+        LinearRing shell = GEOMETRY_FACTORY.createLinearRing(sequence(r0));
+        LinearRing[] holes = new LinearRing[r1 - r0 - 1];
+        for (int r = r0 + 1; r < r1; r++) {
+            holes[r - r0 - 1] = GEOMETRY_FACTORY.createLinearRing(sequence(r));
+        }
+        return GEOMETRY_FACTORY.createPolygon(shell, holes);
+    }
+
+    private CoordinateSequence sequence(int ring) {
+        int c0 = ringCoords[ring];
+        int c1 = ringCoords[ring + 1];
+        return new PackedCoordinateSequence.Double(Arrays.copyOfRange(xy, c0 * 2, c1 * 2), 2, 0);
+    }
+
+    /**
+     * 从要素流构建列式存储
+     */
+    public static Builder builder(SimpleFeatureType featureType) {
+        return new Builder(featureType);
+    }
+
+    public static class Builder {
+        private final CoordinateReferenceSystem crs;
+        private final List<Column> columns = new ArrayList<>();
+        private final Bytes geometryTypes = new Bytes();
+        private final Bytes partTypes = new Bytes();
+        private final Ints featureParts = new Ints();
+        private final Ints partRings = new Ints();
+        private final Ints ringCoords = new Ints();
+        private final Doubles xy = new Doubles();
+        private final Doubles envelopes = new Doubles();
+        private int size;
+
+        private Builder(SimpleFeatureType featureType) {
+            this.crs = featureType.getCoordinateReferenceSystem();
+            for (AttributeDescriptor descriptor : featureType.getAttributeDescriptors()) {
+                Class<?> binding = descriptor.getType().getBinding();
+                if (Geometry.class.isAssignableFrom(binding)) {
+                    continue;
+                }
+                columns.add(Column.forBinding(descriptor.getLocalName(), binding));
+            }
+            featureParts.add(0);
+            partRings.add(0);
+            ringCoords.add(0);
+        }
+
+        public Builder add(SimpleFeature feature) {
+            addGeometry((Geometry) feature.getDefaultGeometry());
+            for (Column column : columns) {
+                column.append(size, feature.getAttribute(column.name));
+            }
+            size++;
+            return this;
+        }
+
+        public ColumnarFeatureStore build() {
+            return new ColumnarFeatureStore(this);
+        }
+
+        private void addGeometry(Geometry g) {
+            if (g == null || g.isEmpty()) {
+                geometryTypes.add(NULL);
+                featureParts.add(partTypes.size);
+                for (int i = 0; i < 4; i++) envelopes.add(Double.NaN);
+                return;
+            }
+            byte type = g instanceof Point ? POINT : g instanceof LineString ? LINESTRING : g instanceof Polygon ? POLYGON
+                    : g instanceof MultiPoint ? MULTIPOINT : g instanceof MultiLineString ? MULTILINESTRING
+                    : g instanceof MultiPolygon ? MULTIPOLYGON : COLLECTION;
+            geometryTypes.add(type);
+            addParts(g);
+            featureParts.add(partTypes.size);
+            Envelope env = g.getEnvelopeInternal();
+            envelopes.add(env.getMinX());
+            envelopes.add(env.getMinY());
+            envelopes.add(env.getMaxX());
+            envelopes.add(env.getMaxY());
+        }
+
+        private void addParts(Geometry g) {
+            if (g instanceof GeometryCollection) {
+                for (int i = 0; i < g.getNumGeometries(); i++) {
+                    Geometry part = g.getGeometryN(i);
+                    if (!part.isEmpty()) {
+                        addParts(part);
+                    }
+                }
+                return;
+            }
+            if (g instanceof Point) {
+                partTypes.add(POINT);
+                addRing(((Point) g).getCoordinateSequence());
+            } else if (g instanceof LineString) {
+                partTypes.add(LINESTRING);
+                addRing(((LineString) g).getCoordinateSequence());
+            } else if (g instanceof Polygon) {
+                Polygon polygon = (Polygon) g;
+                partTypes.add(POLYGON);
+                addRing(polygon.getExteriorRing().getCoordinateSequence());
+                for (int h = 0; h < polygon.getNumInteriorRing(); h++) {
+                    addRing(polygon.getInteriorRingN(h).getCoordinateSequence());
+                }
+            }
+            partRings.add(ringCoords.size - 1);
+        }
+
+        private void addRing(CoordinateSequence seq) {
+            for (int i = 0; i < seq.size(); i++) {
+                xy.add(seq.getX(i));
+                xy.add(seq.getY(i));
+            }
+            ringCoords.add(xy.size / 2);
+        }
+    }
+
+    /**
+     * 属性列。空值用位图记录
+     */
+    public abstract static class Column {
+        final String name;
+        final BitSet nulls = new BitSet();
+
+        Column(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean isNull(int row) {
+            return nulls.get(row);
+        }
+
+        /**
+         * 装箱后的值，空值为 null
+         */
+        public abstract Object get(int row);
+
+        abstract void append(int row, Object value);
+
+        abstract void trim(int size);
+
+        long estimatedBytes() {
+            return nulls.size() / 8;
+        }
+
+        static Column forBinding(String name, Class<?> binding) {
+            if (binding == Integer.class || binding == Short.class || binding == Byte.class) {
+                return new IntColumn(name);
+            }
+            if (binding == Long.class) {
+                return new LongColumn(name);
+            }
+            if (Date.class.isAssignableFrom(binding)) {
+                return new DateColumn(name);
+            }
+            if (binding == Boolean.class) {
+                return new BooleanColumn(name);
+            }
+            if (Number.class.isAssignableFrom(binding)) {
+                return new DoubleColumn(name);
+            }
+            return new StringColumn(name);
+        }
+    }
+
+    public static class IntColumn extends Column {
+        private int[] values = new int[1024];
+
+        IntColumn(String name) {
+            super(name);
+        }
+
+        public int getInt(int row) {
+            return values[row];
+        }
+
+        @Override
+        public Object get(int row) {
+            return isNull(row) ? null : values[row];
+        }
+
+        @Override
+        void append(int row, Object value) {
+            if (row == values.length) values = Arrays.copyOf(values, row * 2);
+            if (value instanceof Number) {
+                values[row] = ((Number) value).intValue();
+            } else {
+                nulls.set(row);
+            }
+        }
+
+        @Override
+        void trim(int size) {
+            values = Arrays.copyOf(values, size);
+        }
+
+        @Override
+        long estimatedBytes() {
+            return super.estimatedBytes() + 4L * values.length;
+        }
+    }
+
+    public static class LongColumn extends Column {
+        long[] values = new long[1024];
+
+        LongColumn(String name) {
+            super(name);
+        }
+
+        public long getLong(int row) {
+            return values[row];
+        }
+
+        @Override
+        public Object get(int row) {
+            return isNull(row) ? null : values[row];
+        }
+
+        @Override
+        void append(int row, Object value) {
+            if (row == values.length) values = Arrays.copyOf(values, row * 2);
+            if (value instanceof Number) {
+                values[row] = ((Number) value).longValue();
+            } else {
+                nulls.set(row);
+            }
+        }
+
+        @Override
+        void trim(int size) {
+            values = Arrays.copyOf(values, size);
+        }
+
+        @Override
+        long estimatedBytes() {
+            return super.estimatedBytes() + 8L * values.length;
+        }
+    }
+
+    /**
+     * 日期列，按毫秒时间戳存储
+     */
+    public static class DateColumn extends LongColumn {
+        DateColumn(String name) {
+            super(name);
+        }
+
+        @Override
+        public Object get(int row) {
+            return isNull(row) ? null : new Date(values[row]);
+        }
+
+        @Override
+        void append(int row, Object value) {
+            super.append(row, value instanceof Date ? (Object) ((Date) value).getTime() : null);
+        }
+    }
+
+    public static class DoubleColumn extends Column {
+        private double[] values = new double[1024];
+
+        DoubleColumn(String name) {
+            super(name);
+        }
+
+        public double getDouble(int row) {
+            return values[row];
+        }
+
+        @Override
+        public Object get(int row) {
+            return isNull(row) ? null : values[row];
+        }
+
+        /**
+         * 并行求和，忽略空值
+         */
+        public double sum() {
+            return IntStream.range(0, values.length).parallel().filter(i -> !nulls.get(i)).mapToDouble(i -> values[i]).sum();
+        }
+
+        /**
+         * 并行求最小值，没有非空值时返回 NaN
+         */
+        public double min() {
+            return IntStream.range(0, values.length).parallel().filter(i -> !nulls.get(i)).mapToDouble(i -> values[i]).min().orElse(Double.NaN);
+        }
+
+        /**
+         * 并行求最大值，没有非空值时返回 NaN
+         */
+        public double max() {
+            return IntStream.range(0, values.length).parallel().filter(i -> !nulls.get(i)).mapToDouble(i -> values[i]).max().orElse(Double.NaN);
+        }
+
+        @Override
+        void append(int row, Object value) {
+            if (row == values.length) values = Arrays.copyOf(values, row * 2);
+            if (value instanceof Number) {
+                values[row] = ((Number) value).doubleValue();
+            } else {
+                nulls.set(row);
+            }
+        }
+
+        @Override
+        void trim(int size) {
+            values = Arrays.copyOf(values, size);
+        }
+
+        @Override
+        long estimatedBytes() {
+            return super.estimatedBytes() + 8L * values.length;
+        }
+    }
+
+    public static class BooleanColumn extends Column {
+        private final BitSet values = new BitSet();
+
+        BooleanColumn(String name) {
+            super(name);
+        }
+
+        public boolean getBoolean(int row) {
+            return values.get(row);
+        }
+
+        @Override
+        public Object get(int row) {
+            return isNull(row) ? null : values.get(row);
+        }
+
+        @Override
+        void append(int row, Object value) {
+            if (value instanceof Boolean) {
+                values.set(row, (Boolean) value);
+            } else {
+                nulls.set(row);
+            }
+        }
+
+        @Override
+        void trim(int size) {
+            // BitSet 按需增长，无需截断
+        }
+
+        @Override
+        long estimatedBytes() {
+            return super.estimatedBytes() + values.size() / 8;
+        }
+    }
+
+    /**
+     * 字典编码的字符串列，重复值只存一份
+     */
+    public static class StringColumn extends Column {
+        private int[] codes = new int[1024];
+        private final List<String> dictionary = new ArrayList<>();
+        private final Map<String, Integer> lookup = new HashMap<>();
+
+        StringColumn(String name) {
+            super(name);
+        }
+
+        /**
+         * 字典编号，空值为 -1
+         */
+        public int getCode(int row) {
+            return codes[row];
+        }
+
+        /**
+         * 字符串对应的字典编号，不存在时为 -1；可用于按编号做整数比较的快速过滤
+         */
+        public int codeOf(String value) {
+            Integer code = lookup.get(value);
+            return code != null ? code : -1;
+        }
+
+        public List<String> getDictionary() {
+            return Collections.unmodifiableList(dictionary);
+        }
+
+        @Override
+        public Object get(int row) {
+            int code = codes[row];
+            return code < 0 ? null : dictionary.get(code);
+        }
+
+        @Override
+        void append(int row, Object value) {
+            if (row == codes.length) codes = Arrays.copyOf(codes, row * 2);
+            if (value == null) {
+                codes[row] = -1;
+                nulls.set(row);
+                return;
+            }
+            String s = value instanceof BigDecimal ? ((BigDecimal) value).toPlainString() : value.toString();
+            codes[row] = lookup.computeIfAbsent(s, k -> {
+                dictionary.add(k);
+                return dictionary.size() - 1;
+            });
+        }
+
+        @Override
+        void trim(int size) {
+            codes = Arrays.copyOf(codes, size);
+        }
+
+        @Override
+        long estimatedBytes() {
+            long bytes = super.estimatedBytes() + 4L * codes.length;
+            for (String s : dictionary) {
+                bytes += 40 + 2L * s.length();
+            }
+            return bytes;
+        }
+    }
+
+    private static final class Ints {
+        int[] data = new int[1024];
+        int size;
+
+        void add(int v) {
+            if (size == data.length) data = Arrays.copyOf(data, size * 2);
+            data[size++] = v;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(data, size);
+        }
+    }
+
+    private static final class Doubles {
+        double[] data = new double[4096];
+        int size;
+
+        void add(double v) {
+            if (size == data.length) data = Arrays.copyOf(data, size * 2);
+            data[size++] = v;
+        }
+
+        double[] toArray() {
+            return Arrays.copyOf(data, size);
+        }
+    }
+
+    private static final class Bytes {
+        byte[] data = new byte[1024];
+        int size;
+
+        void add(byte v) {
+            if (size == data.length) data = Arrays.copyOf(data, size * 2);
+            data[size++] = v;
+        }
+    }
+}
@@ -0,0 +1,561 @@
+package com.shangguan.shpUtils;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.geotools.data.DataStore;
+import org.geotools.data.DataStoreFinder;
+import org.geotools.feature.FeatureIterator;
+import org.geotools.geometry.jts.JTSFactoryFinder;
+import org.locationtech.jts.geom.*;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * @Author: shangguan
+ * @CreateTime: 2025-07-20
+ * @Description: 流式 GeoJSON / NDJSON 读写。基于 Jackson 的 JsonGenerator / JsonParser，
+ * 逐个要素写出和解析，内存占用与要素总数无关；坐标精度可配置，直接写入 OutputStream。
+ */
+public class GeoJsonStreams {
+
+    private static final Logger logger = LoggerFactory.getLogger(GeoJsonStreams.class);
+    private static final GeometryFactory GEOMETRY_FACTORY = JTSFactoryFinder.getGeometryFactory(null);
+
+    // 坐标舍入用的 10 的幂，精度超过 15 位时 double 已无法表示，不再舍入
+    private static final double[] POW10 = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15};
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    /**
+     * 读取时每解析出一个要素回调一次
+     */
+    public interface FeatureHandler {
+        void handle(Geometry geometry, Map<String, Object> properties) throws IOException;
+    }
+
+    /**
+     * 流式要素写出器。FeatureCollection 模式下写完所有要素后必须 close 以补齐结尾；
+     * NDJSON 模式下每个要素独占一行。
+     */
+    public static class StreamWriter implements Closeable {
+        private final JsonGenerator generator;
+        private final boolean ndjson;
+        private final int precision;
+        private final OutputStream out;
+        private long count;
+
+        private StreamWriter(OutputStream out, boolean ndjson, int precision) throws IOException {
+            this.out = out;
+            this.ndjson = ndjson;
+            this.precision = precision;
+            this.generator = JSON_FACTORY.createGenerator(out, JsonEncoding.UTF8);
+            // 由调用方负责关闭底层流
+            this.generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            if (ndjson) {
+                // 根级值之间用换行分隔
+                this.generator.setRootValueSeparator(null);
+            } else {
+                generator.writeStartObject();
+                generator.writeStringField("type", "FeatureCollection");
+                generator.writeArrayFieldStart("features");
+            }
+        }
+
+        /**
+         * 写出一个要素
+         * @param geometry 几何，可为 null
+         * @param properties 属性，可为 null
+         */
+        public void write(Geometry geometry, Map<String, Object> properties) throws IOException {
+            generator.writeStartObject();
+            generator.writeStringField("type", "Feature");
+            generator.writeFieldName("geometry");
+            if (geometry == null) {
+                generator.writeNull();
+            } else {
+                writeGeometry(generator, geometry, precision);
+            }
+            generator.writeObjectFieldStart("properties");
+            if (properties != null) {
+                for (Map.Entry<String, Object> entry : properties.entrySet()) {
+                    generator.writeFieldName(entry.getKey());
+                    writeValue(generator, entry.getValue());
+                }
+            }
+            generator.writeEndObject();
+            generator.writeEndObject();
+            if (ndjson) {
+                generator.flush();
+                out.write('\n');
+            }
+            count++;
+        }
+
+        /**
+         * 写出一个 SimpleFeature（默认几何 + 全部非几何属性）
+         */
+        public void write(SimpleFeature feature) throws IOException {
+            Map<String, Object> properties = new LinkedHashMap<>();
+            for (AttributeDescriptor descriptor : feature.getFeatureType().getAttributeDescriptors()) {
+                Object value = feature.getAttribute(descriptor.getLocalName());
+                if (!(value instanceof Geometry)) {
+                    properties.put(descriptor.getLocalName(), value);
+                }
+            }
+            write((Geometry) feature.getDefaultGeometry(), properties);
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!ndjson) {
+                generator.writeEndArray();
+                generator.writeEndObject();
+            }
+            generator.close();
+            out.flush();
+        }
+    }
+
+    /**
+     * 创建 FeatureCollection 写出器
+     * @param out 输出流（不会被关闭）
+     * @param precision 坐标保留的小数位数，负数表示不截断
+     */
+    public static StreamWriter featureCollectionWriter(OutputStream out, int precision) throws IOException {
+        return new StreamWriter(out, false, precision);
+    }
+
+    /**
+     * 创建 NDJSON（每行一个 Feature）写出器
+     * @param out 输出流（不会被关闭）
+     * @param precision 坐标保留的小数位数，负数表示不截断
+     */
+    public static StreamWriter ndjsonWriter(OutputStream out, int precision) throws IOException {
+        return new StreamWriter(out, true, precision);
+    }
+
+    /**
+     * 把 Shapefile 逐要素导出为 GeoJSON，不把要素整体加载进内存
+     * @param shpFile 输入 shp 文件
+     * @param out 输出流（不会被关闭）
+     * @param ndjson true 输出 NDJSON，false 输出 FeatureCollection
+     * @param precision 坐标保留的小数位数
+     * @return 写出的要素数
+     * @throws IOException 如果读取或写出失败
+     */
+    public static long exportShapefile(File shpFile, OutputStream out, boolean ndjson, int precision) throws IOException {
+        Map<String, Object> params = new HashMap<>();
+        params.put("url", shpFile.toURI().toURL());
+        params.put("charset", StandardCharsets.UTF_8);
+
+        DataStore dataStore = null;
+        try {
+            dataStore = DataStoreFinder.getDataStore(params);
+            if (dataStore == null) {
+                throw new IOException("无法打开Shapefile数据存储: " + shpFile.getAbsolutePath());
+            }
+            String typeName = dataStore.getTypeNames()[0];
+            try (StreamWriter writer = new StreamWriter(out, ndjson, precision);
+                 FeatureIterator<SimpleFeature> iterator = dataStore.getFeatureSource(typeName).getFeatures().features()) {
+                while (iterator.hasNext()) {
+                    writer.write(iterator.next());
+                }
+                logger.info("GeoJSON导出完成: {}，共 {} 个要素。", shpFile.getAbsolutePath(), writer.getCount());
+                return writer.getCount();
+            }
+        } catch (IOException e) {
+            logger.error("导出GeoJSON失败: {}", shpFile.getAbsolutePath(), e);
+            throw e;
+        } finally {
+            if (dataStore != null) {
+                dataStore.dispose();
+            }
+        }
+    }
+
+    /**
+     * 流式读取 GeoJSON，自动识别 FeatureCollection、单个 Feature 和 NDJSON（多个根级 Feature）
+     * @param in 输入流（不会被关闭）
+     * @param handler 每个要素的回调
+     * @return 读取的要素数
+     * @throws IOException 如果格式错误或读取失败
+     */
+    public static long read(InputStream in, FeatureHandler handler) throws IOException {
+        long count = 0;
+        try (JsonParser parser = JSON_FACTORY.createParser(in)) {
+            parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+            JsonToken token;
+            while ((token = parser.nextToken()) != null) {
+                if (token != JsonToken.START_OBJECT) {
+                    throw new IOException("GeoJSON 根级元素应为对象，实际为 " + token);
+                }
+                count += readRootObject(parser, handler);
+            }
+        }
+        return count;
+    }
+
+    // 根级对象：FeatureCollection 只展开 features，Feature 直接回调
+    private static long readRootObject(JsonParser parser, FeatureHandler handler) throws IOException {
+        Geometry geometry = null;
+        Map<String, Object> properties = null;
+        boolean isFeature = false;
+        long count = 0;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "type":
+                    isFeature = "Feature".equals(parser.getText());
+                    break;
+                case "features":
+                    if (value != JsonToken.START_ARRAY) {
+                        throw new IOException("features 应为数组");
+                    }
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        count += readRootObject(parser, handler);
+                    }
+                    break;
+                case "geometry":
+                    geometry = value == JsonToken.VALUE_NULL ? null : readGeometry(parser);
+                    break;
+                case "properties":
+                    properties = value == JsonToken.VALUE_NULL ? new LinkedHashMap<>() : readProperties(parser);
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        if (isFeature) {
+            handler.handle(geometry, properties != null ? properties : new LinkedHashMap<>());
+            count++;
+        }
+        return count;
+    }
+
+    private static Map<String, Object> readProperties(JsonParser parser) throws IOException {
+        Map<String, Object> properties = new LinkedHashMap<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            switch (token) {
+                case VALUE_STRING:
+                    properties.put(name, parser.getText());
+                    break;
+                case VALUE_NUMBER_INT:
+                    properties.put(name, parser.getNumberValue());
+                    break;
+                case VALUE_NUMBER_FLOAT:
+                    properties.put(name, parser.getDoubleValue());
+                    break;
+                case VALUE_TRUE:
+                case VALUE_FALSE:
+                    properties.put(name, parser.getBooleanValue());
+                    break;
+                case VALUE_NULL:
+                    properties.put(name, null);
+                    break;
+                default:
+                    // 嵌套对象/数组保留原始 JSON 文本
+                    properties.put(name, readRawJson(parser));
+            }
+        }
+        return properties;
+    }
+
+    private static String readRawJson(JsonParser parser) throws IOException {
+        StringWriter sw = new StringWriter();
+        try (JsonGenerator gen = JSON_FACTORY.createGenerator(sw)) {
+            gen.copyCurrentStructure(parser);
+        }
+        return sw.toString();
+    }
+
+    // ---------------- 几何解析 ----------------
+
+    private static Geometry readGeometry(JsonParser parser) throws IOException {
+        String type = null;
+        Object coordinates = null;
+        List<Geometry> geometries = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if ("type".equals(field)) {
+                type = parser.getText();
+            } else if ("coordinates".equals(field)) {
+                coordinates = readNestedArray(parser, token);
+            } else if ("geometries".equals(field)) {
+                geometries = new ArrayList<>();
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    geometries.add(readGeometry(parser));
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        if (type == null) {
+            throw new IOException("几何缺少 type 字段");
+        }
+        return buildGeometry(type, coordinates, geometries);
+    }
+
+    // 坐标数组按层级解析：最内层是 double[]，外层是 List
+    private static Object readNestedArray(JsonParser parser, JsonToken token) throws IOException {
+        if (token != JsonToken.START_ARRAY) {
+            throw new IOException("coordinates 应为数组");
+        }
+        JsonToken next = parser.nextToken();
+        if (next == JsonToken.VALUE_NUMBER_INT || next == JsonToken.VALUE_NUMBER_FLOAT) {
+            double[] position = new double[3];
+            int n = 0;
+            while (next != JsonToken.END_ARRAY) {
+                if (n < 3) position[n] = parser.getDoubleValue();
+                n++;
+                next = parser.nextToken();
+            }
+            if (n < 2) {
+                throw new IOException("坐标位置至少需要 2 个分量，实际为 " + n);
+            }
+            return n >= 3 ? position : new double[]{position[0], position[1]};
+        }
+        List<Object> items = new ArrayList<>();
+        while (next != JsonToken.END_ARRAY) {
+            items.add(readNestedArray(parser, next));
+            next = parser.nextToken();
+        }
+        return items;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Geometry buildGeometry(String type, Object coordinates, List<Geometry> geometries) throws IOException {
+        if (!"GeometryCollection".equals(type) && isEmptyCoordinates(coordinates)) {
+            return emptyGeometry(type);
+        }
+        switch (type) {
+            case "Point":
+                return GEOMETRY_FACTORY.createPoint(toCoordinate(coordinates));
+            case "LineString":
+                return GEOMETRY_FACTORY.createLineString(toCoordinates((List<Object>) coordinates));
+            case "Polygon":
+                return toPolygon((List<Object>) coordinates);
+            case "MultiPoint": {
+                return GEOMETRY_FACTORY.createMultiPointFromCoords(toCoordinates((List<Object>) coordinates));
+            }
+            case "MultiLineString": {
+                List<Object> lines = (List<Object>) coordinates;
+                LineString[] result = new LineString[lines.size()];
+                for (int i = 0; i < result.length; i++) {
+                    result[i] = GEOMETRY_FACTORY.createLineString(toCoordinates((List<Object>) lines.get(i)));
+                }
+                return GEOMETRY_FACTORY.createMultiLineString(result);
+            }
+            case "MultiPolygon": {
+                List<Object> polygons = (List<Object>) coordinates;
+                Polygon[] result = new Polygon[polygons.size()];
+                for (int i = 0; i < result.length; i++) {
+                    result[i] = toPolygon((List<Object>) polygons.get(i));
+                }
+                return GEOMETRY_FACTORY.createMultiPolygon(result);
+            }
+            case "GeometryCollection":
+                return GEOMETRY_FACTORY.createGeometryCollection(
+                        geometries != null ? geometries.toArray(new Geometry[0]) : new Geometry[0]);
+            default:
+                throw new IOException("不支持的几何类型: " + type);
+        }
+    }
+
+    // 缺省或空数组的 coordinates 表示空几何（写出端对空 Point 输出 "coordinates":[]）
+    private static boolean isEmptyCoordinates(Object coordinates) {
+        return coordinates == null || (coordinates instanceof List && ((List<?>) coordinates).isEmpty());
+    }
+
+    private static Geometry emptyGeometry(String type) throws IOException {
+        switch (type) {
+            case "Point":
+                return GEOMETRY_FACTORY.createPoint();
+            case "LineString":
+                return GEOMETRY_FACTORY.createLineString();
+            case "Polygon":
+                return GEOMETRY_FACTORY.createPolygon();
+            case "MultiPoint":
+                return GEOMETRY_FACTORY.createMultiPoint();
+            case "MultiLineString":
+                return GEOMETRY_FACTORY.createMultiLineString();
+            case "MultiPolygon":
+                return GEOMETRY_FACTORY.createMultiPolygon();
+            default:
+                throw new IOException("不支持的几何类型: " + type);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Polygon toPolygon(List<Object> rings) throws IOException {
+        if (rings.isEmpty()) {
+            return GEOMETRY_FACTORY.createPolygon();
+        }
+        LinearRing shell = GEOMETRY_FACTORY.createLinearRing(toCoordinates((List<Object>) rings.get(0)));
+        LinearRing[] holes = new LinearRing[rings.size() - 1];
+        for (int i = 1; i < rings.size(); i++) {
+            holes[i - 1] = GEOMETRY_FACTORY.createLinearRing(toCoordinates((List<Object>) rings.get(i)));
+        }
+        return GEOMETRY_FACTORY.createPolygon(shell, holes);
+    }
+
+    private static Coordinate[] toCoordinates(List<Object> positions) throws IOException {
+        Coordinate[] coordinates = new Coordinate[positions.size()];
+        for (int i = 0; i < coordinates.length; i++) {
+            coordinates[i] = toCoordinate(positions.get(i));
+        }
+        return coordinates;
+    }
+
+    private static Coordinate toCoordinate(Object value) throws IOException {
+        if (!(value instanceof double[])) {
+            throw new IOException("坐标数组的嵌套层级与几何类型不符");
+        }
+        double[] position = (double[]) value;
+        return position.length >= 3 ? new Coordinate(position[0], position[1], position[2])
+                : new Coordinate(position[0], position[1]);
+    }
+
+    // ---------------- 几何写出 ----------------
+
+    private static void writeGeometry(JsonGenerator gen, Geometry geometry, int precision) throws IOException {
+        gen.writeStartObject();
+        // LinearRing 在 GeoJSON 中按 LineString 输出
+        gen.writeStringField("type", geometry instanceof LinearRing ? "LineString" : geometry.getGeometryType());
+        if (geometry instanceof GeometryCollection && !(geometry instanceof MultiPoint)
+                && !(geometry instanceof MultiLineString) && !(geometry instanceof MultiPolygon)) {
+            gen.writeArrayFieldStart("geometries");
+            for (int i = 0; i < geometry.getNumGeometries(); i++) {
+                writeGeometry(gen, geometry.getGeometryN(i), precision);
+            }
+            gen.writeEndArray();
+        } else {
+            gen.writeFieldName("coordinates");
+            writeCoordinates(gen, geometry, precision);
+        }
+        gen.writeEndObject();
+    }
+
+    private static void writeCoordinates(JsonGenerator gen, Geometry geometry, int precision) throws IOException {
+        if (geometry instanceof Point) {
+            if (geometry.isEmpty()) {
+                gen.writeStartArray();
+                gen.writeEndArray();
+            } else {
+                writePosition(gen, ((Point) geometry).getCoordinateSequence(), 0, precision);
+            }
+        } else if (geometry instanceof LineString) {
+            writeSequence(gen, ((LineString) geometry).getCoordinateSequence(), precision);
+        } else if (geometry instanceof Polygon) {
+            Polygon polygon = (Polygon) geometry;
+            gen.writeStartArray();
+            if (!polygon.isEmpty()) {
+                writeSequence(gen, polygon.getExteriorRing().getCoordinateSequence(), precision);
+                for (int i = 0; i < polygon.getNumInteriorRing(); i++) {
+                    writeSequence(gen, polygon.getInteriorRingN(i).getCoordinateSequence(), precision);
+                }
+            }
+            gen.writeEndArray();
+        } else {
+            // MultiPoint / MultiLineString / MultiPolygon
+            gen.writeStartArray();
+            for (int i = 0; i < geometry.getNumGeometries(); i++) {
+                writeCoordinates(gen, geometry.getGeometryN(i), precision);
+            }
+            gen.writeEndArray();
+        }
+    }
+
+    private static void writeSequence(JsonGenerator gen, CoordinateSequence seq, int precision) throws IOException {
+        gen.writeStartArray();
+        for (int i = 0; i < seq.size(); i++) {
+            writePosition(gen, seq, i, precision);
+        }
+        gen.writeEndArray();
+    }
+
+    private static void writePosition(JsonGenerator gen, CoordinateSequence seq, int index, int precision) throws IOException {
+        gen.writeStartArray();
+        writeOrdinate(gen, seq.getX(index), precision);
+        writeOrdinate(gen, seq.getY(index), precision);
+        if (seq.hasZ()) {
+            double z = seq.getZ(index);
+            if (!Double.isNaN(z)) {
+                writeOrdinate(gen, z, precision);
+            }
+        }
+        gen.writeEndArray();
+    }
+
+    private static void writeOrdinate(JsonGenerator gen, double value, int precision) throws IOException {
+        if (precision < 0 || Double.isNaN(value) || Double.isInfinite(value)) {
+            gen.writeNumber(value);
+            return;
+        }
+        // 按精度四舍五入后直接写 double，不逐个分量创建 BigDecimal；超出 double 精度的位数不再舍入
+        if (precision < POW10.length) {
+            double scale = POW10[precision];
+            double rounded = Math.rint(value * scale) / scale;
+            if (!Double.isInfinite(rounded)) {
+                value = rounded;
+            }
+        }
+        gen.writeNumber(value);
+    }
+
+    private static void writeValue(JsonGenerator gen, Object value) throws IOException {
+        if (value == null) {
+            gen.writeNull();
+        } else if (value instanceof String) {
+            gen.writeString((String) value);
+        } else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            gen.writeNumber(((Number) value).longValue());
+        } else if (value instanceof Number) {
+            gen.writeNumber(((Number) value).doubleValue());
+        } else if (value instanceof Boolean) {
+            gen.writeBoolean((Boolean) value);
+        } else if (value instanceof Date) {
+            gen.writeString(new java.text.SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss").format((Date) value));
+        } else {
+            gen.writeString(value.toString());
+        }
+    }
+
+    /**
+     * 测试用例
+     */
+    public static void main(String[] args) throws Exception {
+        List<Polygon> polygons = PolygonParser.parsePolygonListFromString(
+                "[[[105.862604473,27.013138109],[105.862661693,27.01300221],[105.862618778,27.012880617],[105.862604473,27.013138109]]]");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (StreamWriter writer = ndjsonWriter(out, 6)) {
+            for (int i = 0; i < polygons.size(); i++) {
+                Map<String, Object> props = new LinkedHashMap<>();
+                props.put("id", i);
+                props.put("name", "地块" + i);
+                writer.write(polygons.get(i), props);
+            }
+        }
+        System.out.println(out.toString("UTF-8"));
+
+        long n = read(new ByteArrayInputStream(out.toByteArray()),
+                (geometry, properties) -> System.out.println(geometry.getGeometryType() + " " + properties));
+        System.out.println("共读取要素: " + n);
+    }
+}
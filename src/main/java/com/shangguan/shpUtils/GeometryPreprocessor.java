@@ -0,0 +1,215 @@
+package com.shangguan.shpUtils;
+
+import org.locationtech.jts.geom.*;
+import org.locationtech.jts.geom.util.GeometryFixer;
+import org.locationtech.jts.geom.util.GeometryTransformer;
+import org.locationtech.jts.precision.GeometryPrecisionReducer;
+import org.locationtech.jts.simplify.TopologyPreservingSimplifier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * @Author: shangguan
+ * @CreateTime: 2025-07-22
+ * @Description: 写入Shapefile前的几何预处理：去除重复顶点、精度压缩、保持拓扑的简化、有效性检查与修复，
+ * 对输入列表并行处理。手绘地块边界往往顶点极多且自相交，处理后文件更小，下游空间查询也不会出错。
+ * 输出列表与输入一一对应，顺序不变，保证与属性列表对齐。
+ */
+public class GeometryPreprocessor {
+
+    private static final Logger logger = LoggerFactory.getLogger(GeometryPreprocessor.class);
+
+    /**
+     * 预处理参数，默认只做去重顶点和修复
+     */
+    public static class Options {
+        private double simplifyTolerance = 0;
+        private double precisionScale = 0;
+        private boolean removeDuplicateVertices = true;
+        private boolean repair = true;
+        private int parallelism = Runtime.getRuntime().availableProcessors();
+
+        /**
+         * 保持拓扑的简化容差（坐标单位），0 表示不简化
+         */
+        public Options simplifyTolerance(double simplifyTolerance) {
+            this.simplifyTolerance = simplifyTolerance;
+            return this;
+        }
+
+        /**
+         * 精度压缩比例，例如 1e7 表示保留 7 位小数，0 表示不压缩
+         */
+        public Options precisionScale(double precisionScale) {
+            this.precisionScale = precisionScale;
+            return this;
+        }
+
+        public Options removeDuplicateVertices(boolean removeDuplicateVertices) {
+            this.removeDuplicateVertices = removeDuplicateVertices;
+            return this;
+        }
+
+        /**
+         * 对无效几何执行 GeometryFixer 修复，失败时退化为 buffer(0)
+         */
+        public Options repair(boolean repair) {
+            this.repair = repair;
+            return this;
+        }
+
+        public Options parallelism(int parallelism) {
+            this.parallelism = Math.max(1, parallelism);
+            return this;
+        }
+    }
+
+    /**
+     * 并行预处理几何列表
+     *
+     * @param geometries 输入几何
+     * @param options    预处理参数
+     * @param targetType 图层几何类型；处理后类型变化时（如修复后的 Polygon 变成 MultiPolygon）会转换回该类型
+     * @return 与输入一一对应的处理结果，处理失败的元素保留原几何
+     */
+    public static <T extends Geometry> List<T> process(List<T> geometries, Options options, Class<T> targetType) {
+        if (geometries == null || geometries.isEmpty()) {
+            return geometries;
+        }
+        Options opts = options != null ? options : new Options();
+        AtomicInteger repaired = new AtomicInteger();
+        AtomicInteger kept = new AtomicInteger();
+        long verticesBefore = 0;
+        for (T g : geometries) {
+            verticesBefore += g != null ? g.getNumPoints() : 0;
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(opts.parallelism);
+        List<T> result;
+        try {
+            result = pool.submit(() -> IntStream.range(0, geometries.size()).parallel()
+                    .mapToObj(i -> processOne(geometries.get(i), opts, targetType, repaired, kept))
+                    .collect(Collectors.toList())).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("几何预处理被中断", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("几何预处理失败", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+
+        long verticesAfter = 0;
+        for (T g : result) {
+            verticesAfter += g != null ? g.getNumPoints() : 0;
+        }
+        logger.info("几何预处理完成：{} 个几何，顶点 {} -> {}，修复 {} 个，保留原几何 {} 个。",
+                result.size(), verticesBefore, verticesAfter, repaired.get(), kept.get());
+        return result;
+    }
+
+    private static <T extends Geometry> T processOne(T original, Options opts, Class<T> targetType,
+                                                     AtomicInteger repaired, AtomicInteger kept) {
+        if (original == null || original.isEmpty()) {
+            return original;
+        }
+        try {
+            Geometry g = original;
+            if (opts.removeDuplicateVertices) {
+                g = new RepeatedPointRemover().transform(g);
+            }
+            if (opts.precisionScale > 0) {
+                g = GeometryPrecisionReducer.reduce(g, new PrecisionModel(opts.precisionScale));
+            }
+            if (opts.simplifyTolerance > 0) {
+                g = TopologyPreservingSimplifier.simplify(g, opts.simplifyTolerance);
+            }
+            if (opts.repair && !g.isValid()) {
+                Geometry fixed = GeometryFixer.fix(g);
+                if ((fixed.isEmpty() || !fixed.isValid()) && g instanceof Polygonal) {
+                    fixed = g.buffer(0);
+                }
+                g = fixed;
+                repaired.incrementAndGet();
+            }
+
+            T coerced = coerce(g, targetType);
+            if (coerced == null || coerced.isEmpty()) {
+                logger.warn("几何预处理后类型或形状退化（{}），保留原几何。", g.getGeometryType());
+                kept.incrementAndGet();
+                return original;
+            }
+            coerced.setUserData(original.getUserData());
+            return coerced;
+        } catch (RuntimeException e) {
+            logger.warn("几何预处理失败，保留原几何: {}", e.getMessage());
+            kept.incrementAndGet();
+            return original;
+        }
+    }
+
+    /**
+     * 把处理结果转换回图层的几何类型：单部件升为多部件；多部件只有一个非空部件时才降为单部件，否则返回 null
+     */
+    static <T extends Geometry> T coerce(Geometry g, Class<T> targetType) {
+        if (targetType.isInstance(g)) {
+            return targetType.cast(g);
+        }
+        GeometryFactory factory = g.getFactory();
+        if (targetType == MultiPolygon.class) {
+            List<Polygon> parts = new ArrayList<>();
+            for (int i = 0; i < g.getNumGeometries(); i++) {
+                if (g.getGeometryN(i) instanceof Polygon) parts.add((Polygon) g.getGeometryN(i));
+            }
+            return parts.isEmpty() ? null : targetType.cast(factory.createMultiPolygon(parts.toArray(new Polygon[0])));
+        }
+        if (targetType == MultiLineString.class) {
+            List<LineString> parts = new ArrayList<>();
+            for (int i = 0; i < g.getNumGeometries(); i++) {
+                if (g.getGeometryN(i) instanceof LineString) parts.add((LineString) g.getGeometryN(i));
+            }
+            return parts.isEmpty() ? null : targetType.cast(factory.createMultiLineString(parts.toArray(new LineString[0])));
+        }
+        if (targetType == MultiPoint.class) {
+            List<Point> parts = new ArrayList<>();
+            for (int i = 0; i < g.getNumGeometries(); i++) {
+                if (g.getGeometryN(i) instanceof Point) parts.add((Point) g.getGeometryN(i));
+            }
+            return parts.isEmpty() ? null : targetType.cast(factory.createMultiPoint(parts.toArray(new Point[0])));
+        }
+
+        // 目标为单部件：只有唯一的非空部件且类型相符时才降级，多个部件时返回 null 由调用方保留原几何，不截断面积/长度
+        Geometry single = null;
+        for (int i = 0; i < g.getNumGeometries(); i++) {
+            Geometry part = g.getGeometryN(i);
+            if (part.isEmpty()) {
+                continue;
+            }
+            if (single != null || !targetType.isInstance(part)) {
+                logger.warn("{} 处理后变为 {} 个部件，无法写入单部件图层。", targetType.getSimpleName(), g.getNumGeometries());
+                return null;
+            }
+            single = part;
+        }
+        return single != null ? targetType.cast(single) : null;
+    }
+
+    /**
+     * 去除相邻重复顶点；环退化为少于 4 个点时交给后续的修复步骤处理
+     */
+    private static class RepeatedPointRemover extends GeometryTransformer {
+        @Override
+        protected CoordinateSequence transformCoordinates(CoordinateSequence coords, Geometry parent) {
+            Coordinate[] deduped = CoordinateArrays.removeRepeatedPoints(coords.toCoordinateArray());
+            return factory.getCoordinateSequenceFactory().create(deduped);
+        }
+    }
+}
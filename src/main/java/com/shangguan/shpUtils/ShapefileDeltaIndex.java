@@ -0,0 +1,169 @@
+package com.shangguan.shpUtils;
+
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.index.strtree.STRtree;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * @Author: shangguan
+ * @CreateTime: 2025-07-29
+ * @Description: .qix 之外的增量空间索引，保存在图层旁的 name.dix 中。
+ * <p>
+ * {@link ShapefileUpdater} 追加或改动几何后，.qix 中对应记录缺失或范围过期；这些记录的序号和新范围记在这里，
+ * .qix 保持不动继续服务其余记录，累计若干批后再统一重建一次 .qix 并删除本文件。
+ * 按范围查询图层时，除了走 .qix 的 BBOX 查询，还要用 {@link #query(Envelope)} 取出增量记录一并读取，
+ * 见 VectorTileGenerator。记录序号从 0 开始，对应 GeoTools 要素 ID 中的 typeName.(序号+1)。
+ */
+public class ShapefileDeltaIndex {
+
+    private static final int MAGIC = 0x44495831; // "DIX1"
+
+    private final File file;
+    /** 记录序号 → 当前几何范围 */
+    private final Map<Integer, Envelope> entries = new TreeMap<>();
+    private int batches;
+    private volatile STRtree tree;
+
+    private ShapefileDeltaIndex(File file) {
+        this.file = file;
+    }
+
+    /**
+     * 增量索引文件路径：与 shp 同名、后缀为 .dix
+     */
+    public static File fileFor(File shpFile) {
+        String path = shpFile.getPath();
+        String base = path.toLowerCase().endsWith(".shp") ? path.substring(0, path.length() - 4) : path;
+        return new File(base + ".dix");
+    }
+
+    /**
+     * 读取图层的增量索引，文件不存在时返回空索引
+     */
+    public static ShapefileDeltaIndex load(File shpFile) throws IOException {
+        ShapefileDeltaIndex index = new ShapefileDeltaIndex(fileFor(shpFile));
+        if (!index.file.exists()) {
+            return index;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(index.file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("增量索引格式错误: " + index.file.getAbsolutePath());
+            }
+            index.batches = in.readInt();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                int record = in.readInt();
+                double minX = in.readDouble();
+                double maxX = in.readDouble();
+                double minY = in.readDouble();
+                double maxY = in.readDouble();
+                index.entries.put(record, new Envelope(minX, maxX, minY, maxY));
+            }
+        }
+        return index;
+    }
+
+    /**
+     * 记录一条新增或几何改动的记录；envelope 为 null（空几何或已作废）时移除该记录
+     */
+    void put(int record, Envelope envelope) {
+        if (envelope == null || envelope.isNull()) {
+            entries.remove(record);
+        } else {
+            entries.put(record, new Envelope(envelope));
+        }
+        tree = null;
+    }
+
+    void incrementBatches() {
+        batches++;
+    }
+
+    /**
+     * 自上次重建 .qix 以来提交的批数
+     */
+    public int getBatches() {
+        return batches;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    /**
+     * 范围与 env 相交的增量记录序号，按序号升序
+     */
+    public List<Integer> query(Envelope env) {
+        STRtree t = tree;
+        if (t == null) {
+            t = buildTree();
+        }
+        @SuppressWarnings("unchecked")
+        List<Integer> records = t.query(env);
+        List<Integer> result = new ArrayList<>(records);
+        Collections.sort(result);
+        return result;
+    }
+
+    private synchronized STRtree buildTree() {
+        if (tree == null) {
+            STRtree t = new STRtree();
+            for (Map.Entry<Integer, Envelope> entry : entries.entrySet()) {
+                t.insert(entry.getValue(), entry.getKey());
+            }
+            t.build();
+            tree = t;
+        }
+        return tree;
+    }
+
+    /**
+     * 写入临时文件后替换，中途失败不会留下半个索引
+     */
+    void save() throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(batches);
+            out.writeInt(entries.size());
+            for (Map.Entry<Integer, Envelope> entry : entries.entrySet()) {
+                Envelope env = entry.getValue();
+                out.writeInt(entry.getKey());
+                out.writeDouble(env.getMinX());
+                out.writeDouble(env.getMaxX());
+                out.writeDouble(env.getMinY());
+                out.writeDouble(env.getMaxY());
+            }
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * .qix 重建后清空并删除文件
+     */
+    void clear() throws IOException {
+        entries.clear();
+        batches = 0;
+        tree = null;
+        Files.deleteIfExists(file.toPath());
+    }
+}
@@ -0,0 +1,149 @@
+package com.shangguan.shpUtils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * @Author: shangguan
+ * @CreateTime: 2025-07-24
+ * @Description: 多图层批量导出任务。所有图层（点、线、面，各自的属性结构）在同一个临时工作目录中并发写出，
+ * 哪个图层先写完就先写入同一个 zip 流，结束后无论成功失败都清理临时文件。
+ * 取代原先每个图层一次“建临时目录 + 写出 + 打包”的串行流程。
+ */
+public class ShapefileExportJob {
+
+    private static final Logger logger = LoggerFactory.getLogger(ShapefileExportJob.class);
+
+    /**
+     * 把一个图层写到指定的 .shp 路径
+     */
+    public interface LayerWriter {
+        void write(File shpFile) throws Exception;
+    }
+
+    private final Map<String, LayerWriter> layers = new LinkedHashMap<>();
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * 添加一个图层，写出方式自定义，例如：
+     * {@code job.addLayer("fields", shp -> ShapefileUtils2.createPolygonShapefile(shp, polygons, attrs, null))}
+     *
+     * @param layerName 图层名，即 zip 中的文件名（不带后缀），不可重复
+     * @param writer    图层写出逻辑
+     * @return this
+     */
+    public ShapefileExportJob addLayer(String layerName, LayerWriter writer) {
+        if (layers.containsKey(layerName)) {
+            throw new IllegalArgumentException("图层名重复: " + layerName);
+        }
+        layers.put(layerName, writer);
+        return this;
+    }
+
+    /**
+     * 按 {@link ShapefileWriter} 的行数据结构添加一个图层
+     */
+    public ShapefileExportJob addLayer(String layerName, ShapefileWriter.GeometryType geometryType,
+                                       List<Map<String, Object>> data, Map<String, Class<?>> attributeTypes,
+                                       String geometryFieldName) {
+        return addLayer(layerName, shp -> ShapefileWriter.writeShapefile(shp.getParentFile(), layerName,
+                geometryType, data, attributeTypes, geometryFieldName));
+    }
+
+    /**
+     * 同时写出的图层数，默认 CPU 核数
+     */
+    public ShapefileExportJob parallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+        return this;
+    }
+
+    /**
+     * 导出为 zip 文件
+     *
+     * @param zipFile 输出的 zip 文件
+     * @return zipFile
+     * @throws IOException 如果任一图层写出或打包失败（此时不保留不完整的 zip）
+     */
+    public File writeToZip(File zipFile) throws IOException {
+        File parentDir = zipFile.getParentFile();
+        if (parentDir != null && !parentDir.exists() && !parentDir.mkdirs()) {
+            throw new IOException("无法创建ZIP文件的输出目录: " + parentDir.getAbsolutePath());
+        }
+        boolean ok = false;
+        try (OutputStream out = new FileOutputStream(zipFile)) {
+            writeTo(out);
+            ok = true;
+        } finally {
+            if (!ok && !zipFile.delete()) {
+                zipFile.deleteOnExit();
+            }
+        }
+        logger.info("多图层导出完成，生成文件：{}", zipFile.getAbsolutePath());
+        return zipFile;
+    }
+
+    /**
+     * 导出为 zip 并直接写入输出流（例如 HTTP 响应或对象存储上传流）
+     *
+     * @param out 输出流（不会被关闭）
+     * @throws IOException 如果任一图层写出或打包失败
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        if (layers.isEmpty()) {
+            throw new IllegalStateException("没有需要导出的图层");
+        }
+        File workspace = Files.createTempDirectory("shp_export").toFile();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, layers.size()));
+        List<Future<String>> futures = new ArrayList<>();
+        try {
+            CompletionService<String> completion = new ExecutorCompletionService<>(executor);
+            for (Map.Entry<String, LayerWriter> layer : layers.entrySet()) {
+                String name = layer.getKey();
+                LayerWriter writer = layer.getValue();
+                futures.add(completion.submit(() -> {
+                    long start = System.currentTimeMillis();
+                    writer.write(new File(workspace, name + ".shp"));
+                    logger.info("图层 '{}' 写出完成，耗时 {} ms。", name, System.currentTimeMillis() - start);
+                    return name;
+                }));
+            }
+
+            ZipOutputStream zos = new ZipOutputStream(out);
+            for (int i = 0; i < futures.size(); i++) {
+                String name = completion.take().get();
+                ShapefileUtils2.addShapefileToZip(zos, new File(workspace, name).getPath());
+            }
+            // finish 而不是 close，不关闭调用方的流
+            zos.finish();
+            zos.flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("多图层导出被中断", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            logger.error("图层写出失败", cause);
+            throw cause instanceof IOException ? (IOException) cause : new IOException("图层写出失败", cause);
+        } finally {
+            for (Future<String> f : futures) {
+                f.cancel(true);
+            }
+            executor.shutdownNow();
+            try {
+                executor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            ShapefileWriter.deleteRecursively(workspace);
+        }
+    }
+}
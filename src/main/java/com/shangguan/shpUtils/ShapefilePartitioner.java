@@ -0,0 +1,227 @@
+package com.shangguan.shpUtils;
+
+import org.locationtech.jts.geom.*;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * @Author: shangguan
+ * @CreateTime: 2025-07-26
+ * @Description: Shapefile 按 2GB 格式上限自动分卷。按要素顺序累计 .shp/.dbf 的字节增长，
+ * 超过阈值就切到 name_part2、name_part3……；分卷边界确定后各分卷并行写出。
+ */
+public class ShapefilePartitioner {
+
+    private static final Logger logger = LoggerFactory.getLogger(ShapefilePartitioner.class);
+
+    /** 默认分卷阈值，留出余量低于 .shp/.dbf 的 2GB（2^31 - 1 字节）上限 */
+    public static final long DEFAULT_MAX_PART_BYTES = 2_000_000_000L;
+
+    private static final int SHP_HEADER_BYTES = 100;
+    private static final int SHP_RECORD_HEADER_BYTES = 8;
+
+    /**
+     * 写出一个分卷
+     */
+    public interface PartWriter {
+        /**
+         * @param partFile 分卷的 .shp 文件
+         * @param start    起始要素下标（含）
+         * @param end      结束要素下标（不含）
+         */
+        void write(File partFile, int start, int end) throws Exception;
+    }
+
+    /**
+     * 按字节阈值划分要素区间
+     *
+     * @param geometries   要素几何，顺序即写出顺序
+     * @param featureType  要素类型，用于估算 dbf 记录长度
+     * @param maxPartBytes 单个分卷的 .shp 或 .dbf 最大字节数，不能超过 2GB
+     * @return 每个分卷的 [start, end) 区间，至少一个
+     */
+    public static List<int[]> partition(List<? extends Geometry> geometries, SimpleFeatureType featureType, long maxPartBytes) {
+        if (maxPartBytes <= 0 || maxPartBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("分卷阈值必须在 (0, 2GB] 之间: " + maxPartBytes);
+        }
+        long dbfHeader = 32L + 32L * (featureType.getAttributeCount() - 1) + 1;
+        long dbfRecord = estimateDbfRecordBytes(featureType);
+
+        List<int[]> ranges = new ArrayList<>();
+        int start = 0;
+        long shpBytes = SHP_HEADER_BYTES;
+        long dbfBytes = dbfHeader;
+        for (int i = 0; i < geometries.size(); i++) {
+            long shpRecord = estimateShpRecordBytes(geometries.get(i));
+            if (i > start && (shpBytes + shpRecord > maxPartBytes || dbfBytes + dbfRecord > maxPartBytes)) {
+                ranges.add(new int[]{start, i});
+                start = i;
+                shpBytes = SHP_HEADER_BYTES;
+                dbfBytes = dbfHeader;
+            }
+            shpBytes += shpRecord;
+            dbfBytes += dbfRecord;
+        }
+        ranges.add(new int[]{start, geometries.size()});
+        if (ranges.size() > 1) {
+            logger.info("要素数 {} 超出单个Shapefile容量，分为 {} 个分卷。", geometries.size(), ranges.size());
+        }
+        return ranges;
+    }
+
+    /**
+     * 估算一个要素在 .shp 中占用的字节数（含 8 字节记录头）
+     */
+    public static long estimateShpRecordBytes(Geometry g) {
+        if (g == null || g.isEmpty()) {
+            return SHP_RECORD_HEADER_BYTES + 4;
+        }
+        long n = g.getNumPoints();
+        // 带 Z 时每个点多 8 字节，另加 Z 范围 16 字节
+        long zBytes = hasZ(g) ? 16 + 8 * n : 0;
+        long content;
+        if (g instanceof Point) {
+            content = 4 + 16 + (zBytes > 0 ? 8 : 0);
+        } else if (g instanceof MultiPoint) {
+            content = 4 + 32 + 4 + 16 * n + zBytes;
+        } else {
+            long parts = 0;
+            for (int i = 0; i < g.getNumGeometries(); i++) {
+                Geometry part = g.getGeometryN(i);
+                parts += part instanceof Polygon ? 1 + ((Polygon) part).getNumInteriorRing() : 1;
+            }
+            content = 4 + 32 + 4 + 4 + 4 * parts + 16 * n + zBytes;
+        }
+        return SHP_RECORD_HEADER_BYTES + content;
+    }
+
+    /**
+     * 估算 .dbf 单条记录长度，字段宽度与 GeoTools 的 dbf 映射一致（取上限）
+     */
+    public static long estimateDbfRecordBytes(SimpleFeatureType featureType) {
+        long length = 1; // 删除标记
+        for (AttributeDescriptor descriptor : featureType.getAttributeDescriptors()) {
+            Class<?> binding = descriptor.getType().getBinding();
+            if (Geometry.class.isAssignableFrom(binding)) {
+                continue;
+            }
+            if (binding == Boolean.class) {
+                length += 1;
+            } else if (Date.class.isAssignableFrom(binding)) {
+                length += 8;
+            } else if (binding == Short.class || binding == Byte.class || binding == Integer.class) {
+                length += 10;
+            } else if (binding == Long.class) {
+                length += 19;
+            } else if (Number.class.isAssignableFrom(binding) || binding == BigDecimal.class) {
+                length += 33;
+            } else {
+                length += 254;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * 分卷文件名：第 1 卷为原文件名，之后为 name_part2.shp、name_part3.shp……
+     */
+    public static File partFile(File shpFile, int partIndex) {
+        if (partIndex == 0) {
+            return shpFile;
+        }
+        String name = shpFile.getName();
+        String base = name.toLowerCase().endsWith(".shp") ? name.substring(0, name.length() - 4) : name;
+        return new File(shpFile.getParentFile(), base + "_part" + (partIndex + 1) + ".shp");
+    }
+
+    /**
+     * 删除上一次写出遗留的分卷文件，避免打包时混入旧数据
+     */
+    public static void deleteStaleParts(File shpFile) {
+        for (int i = 1; ; i++) {
+            File part = partFile(shpFile, i);
+            if (!part.exists()) {
+                break;
+            }
+            String base = part.getPath().substring(0, part.getPath().length() - 4);
+            for (String ext : ShapefileUtils2.SHAPEFILE_EXTENSIONS) {
+                new File(base + ext).delete();
+            }
+            // ShapefileUpdater 留下的增量空间索引
+            new File(base + ".dix").delete();
+        }
+    }
+
+    /**
+     * 并行写出所有分卷；只有一个分卷时直接在当前线程写出
+     *
+     * @return 写出的分卷 .shp 文件
+     */
+    public static List<File> writeParts(File shpFile, List<int[]> ranges, PartWriter writer) throws IOException {
+        deleteStaleParts(shpFile);
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < ranges.size(); i++) {
+            files.add(partFile(shpFile, i));
+        }
+        if (ranges.size() == 1) {
+            runPart(writer, files.get(0), ranges.get(0));
+            return files;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(ranges.size(), Runtime.getRuntime().availableProcessors()));
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < ranges.size(); i++) {
+                File part = files.get(i);
+                int[] range = ranges.get(i);
+                futures.add(executor.submit(() -> {
+                    runPart(writer, part, range);
+                    return null;
+                }));
+            }
+            for (Future<?> f : futures) {
+                f.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("分卷写出被中断", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException("分卷写出失败", cause);
+        } finally {
+            for (Future<?> f : futures) {
+                f.cancel(true);
+            }
+            executor.shutdownNow();
+        }
+        return files;
+    }
+
+    private static void runPart(PartWriter writer, File part, int[] range) throws IOException {
+        try {
+            writer.write(part, range[0], range[1]);
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("分卷写出失败: " + part.getAbsolutePath(), e);
+        }
+    }
+
+    private static boolean hasZ(Geometry g) {
+        Coordinate c = g.getCoordinate();
+        return c != null && !Double.isNaN(c.getZ());
+    }
+}
@@ -0,0 +1,764 @@
+package com.shangguan.shpUtils;
+
+import org.geotools.data.shapefile.ShapefileDataStore;
+import org.geotools.data.shapefile.dbf.DbaseFileHeader;
+import org.geotools.data.shapefile.dbf.DbaseFileWriter;
+import org.geotools.data.shapefile.shp.JTSUtilities;
+import org.geotools.data.shapefile.shp.ShapeHandler;
+import org.geotools.data.shapefile.shp.ShapeType;
+import org.geotools.data.shapefile.shp.ShapefileHeader;
+import org.geotools.geometry.jts.JTSFactoryFinder;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * @Author: shangguan
+ * @CreateTime: 2025-07-29
+ * @Description: 对已有 Shapefile 做增量追加和按键更新（upsert），不再每次 createNewDataStore + createSchema 重写整个图层。
+ * <p>
+ * 变更先在内存中缓冲，达到批大小或 flush/close 时提交，开销只与本批要素数有关：
+ * <ul>
+ *     <li>新增要素直接追加到 .shp/.shx/.dbf 末尾并原地更新文件头（记录数、文件长度、范围）；</li>
+ *     <li>已存在键的更新先顺序扫描 .dbf 的键字段定位记录，再原地覆盖定长的 dbf 行；
+ *     新几何不超过原 .shp 记录长度时原地覆盖，否则追加到末尾、原记录改为空几何并在 dbf 中标记删除。</li>
+ * </ul>
+ * 写入失败时本批变更保留，可再次 flush 重试。
+ * <p>
+ * GeoTools 的 .qix 四叉树是紧凑存储的，不支持插入或修改单个节点。图层已有 .qix 时不删除它，
+ * 而是把追加和几何改动的记录连同新范围写入增量索引 {@link ShapefileDeltaIndex}（name.dix），
+ * 再把 .qix 的修改时间更新到数据文件之后，让 GeoTools 继续使用它；累计 {@link #indexMergeInterval(int)} 批
+ * 或增量记录过多时才在 close 时完整重建一次 .qix 并删除 .dix。只改属性时索引保持有效。
+ * 按范围查询的读取方须合并 .dix 中的记录（VectorTileGenerator 已处理），交给其他软件前可调用
+ * {@link #mergeSpatialIndex(File)}。.fix 只依赖 .shx，追加后删除，由 GeoTools 按需快速重建。非线程安全。
+ */
+public class ShapefileUpdater implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ShapefileUpdater.class);
+    private static final GeometryFactory GEOMETRY_FACTORY = JTSFactoryFinder.getGeometryFactory(null);
+
+    /** 默认批大小 */
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    /** 默认每累计多少批几何变更重建一次 .qix */
+    public static final int DEFAULT_INDEX_MERGE_INTERVAL = 30;
+
+    /** 增量索引超过该记录数时不等批数，直接重建 .qix */
+    private static final int MAX_DELTA_RECORDS = 100_000;
+
+    private static final int SHP_HEADER_BYTES = 100;
+
+    /**
+     * 一条待提交的变更
+     */
+    private static class Change {
+        final Geometry geometry;
+        final Map<String, Object> attributes;
+
+        Change(Geometry geometry, Map<String, Object> attributes) {
+            this.geometry = geometry;
+            this.attributes = attributes != null ? attributes : Collections.emptyMap();
+        }
+    }
+
+    private final File shpFile;
+    private final String basePath;
+    private final int batchSize;
+    private final List<Change> pendingAppends = new ArrayList<>();
+    private final Map<Object, Change> pendingUpserts = new LinkedHashMap<>();
+    private String upsertKey;
+    private final boolean indexed;
+    private final ShapefileDeltaIndex delta;
+    private int indexMergeInterval = DEFAULT_INDEX_MERGE_INTERVAL;
+    private long appended;
+    private long updated;
+
+    /**
+     * @param shpFile   已存在的 shp 文件
+     * @param batchSize 每批提交的变更数
+     */
+    public ShapefileUpdater(File shpFile, int batchSize) throws IOException {
+        if (!shpFile.exists()) {
+            throw new IOException("Shapefile不存在: " + shpFile.getAbsolutePath());
+        }
+        this.shpFile = shpFile;
+        String path = shpFile.getPath();
+        this.basePath = path.toLowerCase().endsWith(".shp") ? path.substring(0, path.length() - 4) : path;
+        this.batchSize = Math.max(1, batchSize);
+        // .qix 早于 .shp 说明已被别的程序改过数据，GeoTools 会视其为过期，这里也不再沿用
+        File qix = new File(basePath + ".qix");
+        this.indexed = qix.exists() && qix.lastModified() >= new File(basePath + ".shp").lastModified();
+        this.delta = ShapefileDeltaIndex.load(shpFile);
+        if (!indexed && !delta.isEmpty()) {
+            // .qix 已不存在或已过期，增量索引没有意义
+            delta.clear();
+        }
+    }
+
+    public ShapefileUpdater(File shpFile) throws IOException {
+        this(shpFile, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * 每累计多少批几何变更重建一次 .qix，默认 {@value #DEFAULT_INDEX_MERGE_INTERVAL}；1 表示每次 close 都重建
+     */
+    public ShapefileUpdater indexMergeInterval(int batches) {
+        this.indexMergeInterval = Math.max(1, batches);
+        return this;
+    }
+
+    /**
+     * 追加一个新要素
+     *
+     * @param geometry   几何，类型须与图层一致
+     * @param attributes 属性，不在图层字段中的属性会被忽略
+     */
+    public void append(Geometry geometry, Map<String, Object> attributes) throws IOException {
+        pendingAppends.add(new Change(geometry, attributes));
+        if (pendingCount() >= batchSize) {
+            flush();
+        }
+    }
+
+    /**
+     * 按键更新：键已存在时更新该要素的几何（不为 null 时）和给出的属性，不存在时追加
+     *
+     * @param keyField   键字段名，同一个更新器只能使用一个键字段
+     * @param geometry   几何，为 null 时保持原几何
+     * @param attributes 属性，须包含键字段
+     */
+    public void upsert(String keyField, Geometry geometry, Map<String, Object> attributes) throws IOException {
+        if (upsertKey == null) {
+            upsertKey = keyField;
+        } else if (!upsertKey.equals(keyField)) {
+            throw new IllegalArgumentException("同一个更新器只能使用一个键字段: " + upsertKey);
+        }
+        Object key = attributes != null ? normalizeKey(attributes.get(keyField)) : null;
+        if (key == null) {
+            throw new IllegalArgumentException("属性中缺少键字段: " + keyField);
+        }
+        // 同一批内同一个键以最后一次为准
+        pendingUpserts.put(key, new Change(geometry, attributes));
+        if (pendingCount() >= batchSize) {
+            flush();
+        }
+    }
+
+    /**
+     * 提交所有缓冲的变更
+     */
+    public void flush() throws IOException {
+        if (!pendingUpserts.isEmpty()) {
+            applyUpdates();
+        }
+        if (!pendingAppends.isEmpty()) {
+            appendRecords(pendingAppends);
+            appended += pendingAppends.size();
+            pendingAppends.clear();
+        }
+    }
+
+    /**
+     * 提交剩余变更；增量索引累计的批数或记录数达到上限时重建一次 .qix
+     */
+    @Override
+    public void close() throws IOException {
+        flush();
+        if (indexed && !delta.isEmpty()
+                && (delta.getBatches() >= indexMergeInterval || delta.size() > MAX_DELTA_RECORDS)) {
+            rebuildSpatialIndex();
+            delta.clear();
+        } else if (indexed && !delta.isEmpty()) {
+            logger.info("增量索引 {} 条记录，已累计 {}/{} 批，暂不重建 .qix。", delta.size(), delta.getBatches(), indexMergeInterval);
+        }
+        logger.info("增量更新完成: {}，追加 {} 个要素，更新 {} 个要素。", shpFile.getAbsolutePath(), appended, updated);
+    }
+
+    private int pendingCount() {
+        return pendingAppends.size() + pendingUpserts.size();
+    }
+
+    /**
+     * 在 dbf 中定位已存在的键并原地修改对应记录；未命中的键转为追加。
+     * 全部写入成功后才从待提交队列中移除，失败时变更保留，可以再次 flush 重试。
+     */
+    private void applyUpdates() throws IOException {
+        int hits = 0;
+        int moved = 0;
+        boolean geometryChanged = false;
+        List<Object> applied = new ArrayList<>();
+        Map<Integer, Envelope> touched = new LinkedHashMap<>();
+        try (RandomAccessFile shpRaf = new RandomAccessFile(basePath + ".shp", "rw");
+             RandomAccessFile shxRaf = new RandomAccessFile(basePath + ".shx", "rw");
+             RandomAccessFile dbfRaf = new RandomAccessFile(basePath + ".dbf", "rw")) {
+            FileChannel shp = shpRaf.getChannel();
+            FileChannel shx = shxRaf.getChannel();
+            FileChannel dbf = dbfRaf.getChannel();
+
+            DbfRows rows = new DbfRows(dbf);
+            Integer keyIndex = rows.fieldIndex(upsertKey);
+            if (keyIndex == null) {
+                throw new IllegalArgumentException("图层中没有键字段: " + upsertKey);
+            }
+            Map<Integer, Object> located = rows.locate(keyIndex, pendingUpserts.keySet());
+
+            ShapefileHeader header = readShapeHeader(shp);
+            ShapeType shapeType = header.getShapeType();
+            ShapeHandler handler = shapeType.getShapeHandler(GEOMETRY_FACTORY);
+            Envelope bounds = new Envelope(header.minX(), header.maxX(), header.minY(), header.maxY());
+
+            List<Geometry> movedGeometries = new ArrayList<>();
+            List<byte[]> movedRows = new ArrayList<>();
+            List<Integer> tombstones = new ArrayList<>();
+            for (Map.Entry<Integer, Object> entry : located.entrySet()) {
+                int record = entry.getKey();
+                Change change = pendingUpserts.get(entry.getValue());
+                byte[] row = rows.merge(rows.read(record), change.attributes);
+                if (change.geometry == null) {
+                    rows.write(record, row);
+                } else {
+                    Geometry g = toShapeGeometry(change.geometry, shapeType);
+                    geometryChanged = true;
+                    if (writeShapeInPlace(shp, shx, record, g, shapeType, handler)) {
+                        rows.write(record, row);
+                        if (g != null) {
+                            bounds.expandToInclude(g.getEnvelopeInternal());
+                        }
+                        touched.put(record, g != null ? g.getEnvelopeInternal() : null);
+                    } else {
+                        // 新几何比原记录长：追加到文件末尾，原记录作废
+                        movedGeometries.add(change.geometry);
+                        movedRows.add(row);
+                        tombstones.add(record);
+                    }
+                }
+                applied.add(entry.getValue());
+                hits++;
+            }
+            if (geometryChanged) {
+                writeShapeHeader(shp, shapeType, (int) (shp.size() / 2), bounds);
+                writeShapeHeader(shx, shapeType, (int) (shx.size() / 2), bounds);
+            }
+            if (!movedGeometries.isEmpty()) {
+                appendRaw(shp, shx, rows, movedGeometries, movedRows, touched);
+                for (int record : tombstones) {
+                    tombstone(shp, shx, rows, record);
+                    touched.put(record, null);
+                }
+                moved = tombstones.size();
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.error("Shapefile更新失败，本批变更保留待重试: {}", shpFile.getAbsolutePath(), e);
+            throw e;
+        }
+
+        for (Object key : applied) {
+            pendingUpserts.remove(key);
+        }
+        updated += hits;
+        if (geometryChanged) {
+            commitIndex(touched, moved > 0);
+        }
+        // 剩余的键在图层中不存在，作为新要素追加
+        for (Change change : pendingUpserts.values()) {
+            if (change.geometry == null) {
+                logger.warn("键 {} 不存在且没有几何，跳过。", change.attributes.get(upsertKey));
+                continue;
+            }
+            pendingAppends.add(change);
+        }
+        pendingUpserts.clear();
+        logger.info("本批原地更新 {} 个要素，其中 {} 个几何变长后移至文件末尾。", hits, moved);
+    }
+
+    /**
+     * 新几何不超过原记录长度时原地覆盖，剩余字节补零；记录头和 .shx 中的长度保持不变，顺序读取不受影响
+     *
+     * @return 放不下时返回 false，文件不做修改
+     */
+    private static boolean writeShapeInPlace(FileChannel shp, FileChannel shx, int record, Geometry g,
+                                             ShapeType shapeType, ShapeHandler handler) throws IOException {
+        ByteBuffer entry = ByteBuffer.allocate(8).order(ByteOrder.BIG_ENDIAN);
+        readFully(shx, entry, SHP_HEADER_BYTES + record * 8L);
+        long offset = entry.getInt(0) * 2L;
+        int oldLength = entry.getInt(4) * 2;
+        int length = g == null ? 4 : handler.getLength(g);
+        if (length > oldLength) {
+            return false;
+        }
+        ByteBuffer content = ByteBuffer.allocate(oldLength).order(ByteOrder.LITTLE_ENDIAN);
+        if (g == null) {
+            content.putInt(ShapeType.NULL.id);
+        } else {
+            content.putInt(shapeType.id);
+            handler.write(content, g);
+        }
+        content.position(0);
+        writeFully(shp, content, offset + 8);
+        return true;
+    }
+
+    /**
+     * 作废一条记录：.shp 中的内容改为空几何，.dbf 中的行打上删除标记
+     */
+    private static void tombstone(FileChannel shp, FileChannel shx, DbfRows rows, int record) throws IOException {
+        ByteBuffer entry = ByteBuffer.allocate(8).order(ByteOrder.BIG_ENDIAN);
+        readFully(shx, entry, SHP_HEADER_BYTES + record * 8L);
+        long offset = entry.getInt(0) * 2L;
+        int oldLength = entry.getInt(4) * 2;
+        // 全零内容即 NULL 几何（类型 0）
+        writeFully(shp, ByteBuffer.allocate(oldLength), offset + 8);
+        rows.markDeleted(record);
+    }
+
+    /**
+     * 把要素追加到 .shp/.shx/.dbf 末尾，并原地更新三个文件的头部
+     */
+    private void appendRecords(List<Change> changes) throws IOException {
+        Map<Integer, Envelope> touched = new LinkedHashMap<>();
+        try (RandomAccessFile shpRaf = new RandomAccessFile(basePath + ".shp", "rw");
+             RandomAccessFile shxRaf = new RandomAccessFile(basePath + ".shx", "rw");
+             RandomAccessFile dbfRaf = new RandomAccessFile(basePath + ".dbf", "rw")) {
+            DbfRows rows = new DbfRows(dbfRaf.getChannel());
+            List<Geometry> geometries = new ArrayList<>(changes.size());
+            List<byte[]> encoded = new ArrayList<>(changes.size());
+            for (Change change : changes) {
+                geometries.add(change.geometry);
+                encoded.add(rows.encode(change.attributes));
+            }
+            appendRaw(shpRaf.getChannel(), shxRaf.getChannel(), rows, geometries, encoded, touched);
+        }
+        commitIndex(touched, true);
+        logger.info("追加 {} 个要素到 {}", changes.size(), shpFile.getAbsolutePath());
+    }
+
+    /**
+     * 追加已编码好的 dbf 行及对应几何，新记录的序号和范围写入 touched
+     */
+    private void appendRaw(FileChannel shp, FileChannel shx, DbfRows rows, List<Geometry> geometries,
+                           List<byte[]> encodedRows, Map<Integer, Envelope> touched) throws IOException {
+        ShapefileHeader header = readShapeHeader(shp);
+        ShapeType shapeType = header.getShapeType();
+        ShapeHandler handler = shapeType.getShapeHandler(GEOMETRY_FACTORY);
+
+        Envelope bounds = new Envelope(header.minX(), header.maxX(), header.minY(), header.maxY());
+        if (shx.size() <= SHP_HEADER_BYTES) {
+            // 空图层的头部范围无意义
+            bounds.setToNull();
+        }
+        long shpSize = shp.size();
+        int recordNumber = (int) ((shx.size() - SHP_HEADER_BYTES) / 8);
+
+        // 先编码全部记录，确认不会超过 2GB 上限后再写文件
+        ByteBuffer shpRecords = ByteBuffer.allocate(64 * 1024);
+        ByteBuffer shxRecords = ByteBuffer.allocate(geometries.size() * 8).order(ByteOrder.BIG_ENDIAN);
+        long offset = shpSize;
+        for (Geometry geometry : geometries) {
+            Geometry g = toShapeGeometry(geometry, shapeType);
+            int length = g == null ? 4 : handler.getLength(g);
+            shpRecords = ensureCapacity(shpRecords, length + 8);
+            shpRecords.order(ByteOrder.BIG_ENDIAN);
+            shpRecords.putInt(++recordNumber);
+            shpRecords.putInt(length / 2);
+            shpRecords.order(ByteOrder.LITTLE_ENDIAN);
+            if (g == null) {
+                shpRecords.putInt(ShapeType.NULL.id);
+            } else {
+                shpRecords.putInt(shapeType.id);
+                handler.write(shpRecords, g);
+                bounds.expandToInclude(g.getEnvelopeInternal());
+                // recordNumber 从 1 开始，增量索引按 0 开始的序号记录
+                touched.put(recordNumber - 1, g.getEnvelopeInternal());
+            }
+            shxRecords.putInt((int) (offset / 2));
+            shxRecords.putInt(length / 2);
+            offset += length + 8;
+        }
+        if (offset > Integer.MAX_VALUE) {
+            throw new IOException("追加后 .shp 将超过 2GB 上限: " + basePath + ".shp");
+        }
+        rows.checkAppend(encodedRows.size(), basePath);
+
+        shpRecords.flip();
+        writeFully(shp, shpRecords, shpSize);
+        shxRecords.flip();
+        long shxSize = shx.size();
+        writeFully(shx, shxRecords, shxSize);
+        writeShapeHeader(shp, shapeType, (int) (offset / 2), bounds);
+        writeShapeHeader(shx, shapeType, (int) ((shxSize + geometries.size() * 8L) / 2), bounds);
+
+        rows.append(encodedRows);
+    }
+
+    /**
+     * 几何转换为图层类型可写的形式，null 和空几何写为 NULL 记录
+     */
+    private static Geometry toShapeGeometry(Geometry g, ShapeType shapeType) {
+        if (g == null || g.isEmpty()) {
+            return null;
+        }
+        if (shapeType.isPolygonType() || shapeType.isLineType()) {
+            return JTSUtilities.convertToCollection(g, shapeType);
+        }
+        return g;
+    }
+
+    private static ShapefileHeader readShapeHeader(FileChannel shp) throws IOException {
+        ShapefileHeader header = new ShapefileHeader();
+        ByteBuffer headerBuffer = ByteBuffer.allocate(SHP_HEADER_BYTES);
+        readFully(shp, headerBuffer, 0);
+        headerBuffer.flip();
+        header.read(headerBuffer, true);
+        return header;
+    }
+
+    /**
+     * 按定长行直接读写 .dbf：记录位置为 头长度 + 序号 × 行长，字段在行内的偏移固定。
+     * 字段格式化借用 DbaseFileWriter，它写出的头部被丢弃，只取编码好的行。
+     */
+    private static class DbfRows {
+        private final FileChannel dbf;
+        private final DbaseFileHeader header;
+        private final int recordLength;
+        private final int[] fieldOffsets;
+        private final Map<String, Integer> fieldIndex = new HashMap<>();
+        private final ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        private final DbaseFileWriter writer;
+
+        DbfRows(FileChannel dbf) throws IOException {
+            this.dbf = dbf;
+            this.header = new DbaseFileHeader();
+            dbf.position(0);
+            header.readHeader(dbf, StandardCharsets.UTF_8);
+            this.recordLength = header.getRecordLength();
+            int fieldCount = header.getNumFields();
+            this.fieldOffsets = new int[fieldCount];
+            int offset = 1; // 删除标记
+            for (int i = 0; i < fieldCount; i++) {
+                fieldOffsets[i] = offset;
+                offset += header.getFieldLength(i);
+                fieldIndex.put(header.getFieldName(i), i);
+            }
+            HeaderSkippingChannel channel = new HeaderSkippingChannel(Channels.newChannel(encoded));
+            this.writer = new DbaseFileWriter(header, channel, StandardCharsets.UTF_8);
+            channel.passThrough = true;
+        }
+
+        Integer fieldIndex(String name) {
+            Integer i = fieldIndex.get(name);
+            if (i == null && name.length() > 10) {
+                // dbf 字段名最长 10 个字符
+                i = fieldIndex.get(name.substring(0, 10));
+            }
+            return i;
+        }
+
+        private long rowOffset(int record) {
+            return header.getHeaderLength() + (long) record * recordLength;
+        }
+
+        /**
+         * 顺序扫描键字段，返回 记录序号 → 键，同一个键只取第一条未删除的记录；全部找到后提前结束
+         */
+        Map<Integer, Object> locate(int keyIndex, Set<Object> keys) throws IOException {
+            Map<Integer, Object> located = new TreeMap<>();
+            Set<Object> remaining = new HashSet<>(keys);
+            int numRecords = header.getNumRecords();
+            int perChunk = Math.max(1, 64 * 1024 / recordLength);
+            ByteBuffer chunk = ByteBuffer.allocate(perChunk * recordLength);
+            int keyOffset = fieldOffsets[keyIndex];
+            int keyLength = header.getFieldLength(keyIndex);
+            char keyType = header.getFieldType(keyIndex);
+            for (int first = 0; first < numRecords && !remaining.isEmpty(); first += perChunk) {
+                int count = Math.min(perChunk, numRecords - first);
+                chunk.clear();
+                chunk.limit(count * recordLength);
+                readFully(dbf, chunk, rowOffset(first));
+                byte[] bytes = chunk.array();
+                for (int r = 0; r < count; r++) {
+                    int base = r * recordLength;
+                    if (bytes[base] == '*') {
+                        continue;
+                    }
+                    String text = new String(bytes, base + keyOffset, keyLength, StandardCharsets.UTF_8).trim();
+                    Object key = normalizeKey(parseKey(keyType, text));
+                    if (key != null && remaining.remove(key)) {
+                        located.put(first + r, key);
+                    }
+                }
+            }
+            return located;
+        }
+
+        byte[] read(int record) throws IOException {
+            ByteBuffer row = ByteBuffer.allocate(recordLength);
+            readFully(dbf, row, rowOffset(record));
+            return row.array();
+        }
+
+        void write(int record, byte[] row) throws IOException {
+            writeFully(dbf, ByteBuffer.wrap(row), rowOffset(record));
+        }
+
+        void markDeleted(int record) throws IOException {
+            writeFully(dbf, ByteBuffer.wrap(new byte[]{'*'}), rowOffset(record));
+        }
+
+        /**
+         * 按字段编码一整行，未给出的字段为空值
+         */
+        byte[] encode(Map<String, Object> attributes) throws IOException {
+            Object[] record = new Object[fieldOffsets.length];
+            for (Map.Entry<String, Object> entry : attributes.entrySet()) {
+                Integer i = fieldIndex(entry.getKey());
+                if (i != null) {
+                    record[i] = coerce(header.getFieldType(i), entry.getValue());
+                }
+            }
+            encoded.reset();
+            writer.write(record);
+            return encoded.toByteArray();
+        }
+
+        /**
+         * 在原有行上只替换给出的字段
+         */
+        byte[] merge(byte[] existing, Map<String, Object> attributes) throws IOException {
+            byte[] fresh = encode(attributes);
+            byte[] row = existing.clone();
+            for (String name : attributes.keySet()) {
+                Integer i = fieldIndex(name);
+                if (i != null) {
+                    System.arraycopy(fresh, fieldOffsets[i], row, fieldOffsets[i], header.getFieldLength(i));
+                }
+            }
+            return row;
+        }
+
+        void checkAppend(int count, String basePath) throws IOException {
+            if (rowOffset(header.getNumRecords()) + (long) count * recordLength > Integer.MAX_VALUE) {
+                throw new IOException("追加后 .dbf 将超过 2GB 上限: " + basePath + ".dbf");
+            }
+        }
+
+        /**
+         * 追加行，重写文件结束标记并原地修改头部记录数
+         */
+        void append(List<byte[]> rows) throws IOException {
+            int oldRecords = header.getNumRecords();
+            ByteBuffer buffer = ByteBuffer.allocate(rows.size() * recordLength + 1);
+            for (byte[] row : rows) {
+                buffer.put(row);
+            }
+            // 文件结束标记
+            buffer.put((byte) 0x1A);
+            buffer.flip();
+            long end = rowOffset(oldRecords);
+            writeFully(dbf, buffer, end);
+            dbf.truncate(end + rows.size() * (long) recordLength + 1);
+
+            ByteBuffer count = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            count.putInt(0, oldRecords + rows.size());
+            writeFully(dbf, count, 4);
+            header.setNumRecords(oldRecords + rows.size());
+        }
+
+        private static Object parseKey(char type, String text) {
+            if (type == 'N' || type == 'F') {
+                try {
+                    return Double.parseDouble(text);
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+            }
+            return text;
+        }
+    }
+
+    /**
+     * 属性值转换为 dbf 字段类型可接受的值
+     */
+    private static Object coerce(char fieldType, Object value) {
+        if (value == null) {
+            return null;
+        }
+        switch (fieldType) {
+            case 'N':
+            case 'F':
+                if (value instanceof Number) {
+                    return value;
+                }
+                try {
+                    return new BigDecimal(value.toString().trim());
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+            case 'L':
+                return value instanceof Boolean ? value : Boolean.valueOf(value.toString());
+            case 'D':
+                return value instanceof Date ? value : null;
+            default:
+                return value.toString();
+        }
+    }
+
+    /**
+     * 键统一为 Long / Double / String，避免 Integer 与 Long 等类型差异导致匹配失败
+     */
+    private static Object normalizeKey(Object key) {
+        if (key == null) {
+            return null;
+        }
+        if (key instanceof Number) {
+            double d = ((Number) key).doubleValue();
+            if (d == Math.rint(d) && !Double.isInfinite(d)) {
+                return (long) d;
+            }
+            return d;
+        }
+        String s = key.toString().trim();
+        return s.isEmpty() ? null : s;
+    }
+
+    /**
+     * 本批写入成功后更新索引：有 .qix 时把改动记入增量索引并保存，再把 .qix 的修改时间推到数据文件之后，
+     * GeoTools 据此认为索引未过期；先保存 .dix 再更新时间，中途失败时 .qix 显示为过期，读取方只会退回全表扫描。
+     * 有追加时删除 .fix（要素 ID 索引），它只依赖 .shx，GeoTools 需要时会快速重建。
+     */
+    private void commitIndex(Map<Integer, Envelope> touched, boolean appendedRecords) throws IOException {
+        if (appendedRecords) {
+            File fix = new File(basePath + ".fix");
+            if (fix.exists() && !fix.delete()) {
+                logger.warn("无法删除过期的要素ID索引: {}", fix.getAbsolutePath());
+            }
+        }
+        if (!indexed || touched.isEmpty()) {
+            return;
+        }
+        for (Map.Entry<Integer, Envelope> entry : touched.entrySet()) {
+            delta.put(entry.getKey(), entry.getValue());
+        }
+        delta.incrementBatches();
+        delta.save();
+
+        long latest = System.currentTimeMillis();
+        for (String ext : new String[]{".shp", ".shx", ".dbf"}) {
+            latest = Math.max(latest, new File(basePath + ext).lastModified());
+        }
+        File qix = new File(basePath + ".qix");
+        if (!qix.setLastModified(latest)) {
+            logger.warn("无法更新空间索引的修改时间，GeoTools 将视其为过期: {}", qix.getAbsolutePath());
+        }
+    }
+
+    /**
+     * 完整重建图层的 .qix 并删除增量索引 .dix，用于把图层交给不识别 .dix 的软件之前
+     *
+     * @param shpFile 图层 shp 文件
+     */
+    public static void mergeSpatialIndex(File shpFile) throws IOException {
+        rebuildSpatialIndex(shpFile);
+        ShapefileDeltaIndex.load(shpFile).clear();
+    }
+
+    private void rebuildSpatialIndex() throws IOException {
+        rebuildSpatialIndex(shpFile);
+    }
+
+    private static void rebuildSpatialIndex(File shpFile) throws IOException {
+        ShapefileDataStore dataStore = new ShapefileDataStore(shpFile.toURI().toURL());
+        try {
+            dataStore.setCharset(StandardCharsets.UTF_8);
+            dataStore.createSpatialIndex(true);
+            logger.info("空间索引已重建: {}", shpFile.getAbsolutePath());
+        } finally {
+            dataStore.dispose();
+        }
+    }
+
+    private static void writeShapeHeader(FileChannel channel, ShapeType type, int lengthWords, Envelope bounds) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SHP_HEADER_BYTES);
+        if (bounds.isNull()) {
+            new ShapefileHeader().write(buffer, type, 0, lengthWords, 0, 0, 0, 0);
+        } else {
+            new ShapefileHeader().write(buffer, type, 0, lengthWords,
+                    bounds.getMinX(), bounds.getMinY(), bounds.getMaxX(), bounds.getMaxY());
+        }
+        buffer.flip();
+        writeFully(channel, buffer, 0);
+    }
+
+    private static ByteBuffer ensureCapacity(ByteBuffer buffer, int extra) {
+        if (buffer.remaining() >= extra) {
+            return buffer;
+        }
+        ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + extra));
+        buffer.flip();
+        grown.put(buffer);
+        return grown;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position);
+            if (n < 0) {
+                throw new IOException("文件头不完整");
+            }
+            position += n;
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /**
+     * DbaseFileWriter 构造时会写出一份头部，追加时需要丢弃它
+     */
+    private static class HeaderSkippingChannel implements WritableByteChannel {
+        private final WritableByteChannel delegate;
+        boolean passThrough;
+
+        HeaderSkippingChannel(WritableByteChannel delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            if (passThrough) {
+                return delegate.write(src);
+            }
+            int n = src.remaining();
+            src.position(src.limit());
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return delegate.isOpen();
+        }
+
+        @Override
+        public void close() {
+            // 只写内存，无需关闭
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.shangguan.shpUtils;
+
+import org.geotools.data.shapefile.ShapefileDataStore;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.geometry.jts.JTSFactoryFinder;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Polygon;
+import org.opengis.feature.simple.SimpleFeature;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+
+/**
+ * @Author: shangguan
+ * @CreateTime: 2025-07-29
+ * @Description: {@link ShapefileUpdater} 的往返校验。更新器直接改写 .shp/.shx/.dbf 的字节，这里在临时目录中
+ * 建一个带 .qix 的小图层，依次执行追加、原地 upsert、几何变长的 upsert，再用 ShapefileDataStore 读回，
+ * 逐个核对几何、属性、文件头范围和增量索引，不一致时抛出 IllegalStateException。
+ * <pre>
+ *   java -cp ... com.shangguan.shpUtils.ShapefileUpdaterCheck [工作目录]
+ * </pre>
+ */
+public class ShapefileUpdaterCheck {
+
+    private static final Logger logger = LoggerFactory.getLogger(ShapefileUpdaterCheck.class);
+    private static final GeometryFactory GEOMETRY_FACTORY = JTSFactoryFinder.getGeometryFactory(null);
+
+    public static void main(String[] args) throws Exception {
+        File dir = args.length > 0 ? new File(args[0]) : Files.createTempDirectory("updater_check").toFile();
+        run(dir);
+        logger.info("往返校验通过: {}", dir.getAbsolutePath());
+    }
+
+    /**
+     * 在 dir 下生成 check.shp 并执行全部校验
+     */
+    public static void run(File dir) throws IOException {
+        File shp = new File(dir, "check.shp");
+        List<Polygon> polygons = Arrays.asList(square(0, 0, 10), square(20, 0, 10));
+        List<Map<String, Object>> attrs = Arrays.asList(row(1, "a"), row(2, "b"));
+        ShapefileUtils2.createPolygonShapefile(shp, polygons, attrs, null);
+        // 先建好 .qix，使更新走增量索引
+        ShapefileUpdater.mergeSpatialIndex(shp);
+
+        Map<Long, Geometry> expectedGeometry = new TreeMap<>();
+        Map<Long, String> expectedName = new TreeMap<>();
+        expectedGeometry.put(1L, polygons.get(0));
+        expectedGeometry.put(2L, polygons.get(1));
+        expectedName.put(1L, "a");
+        expectedName.put(2L, "b");
+
+        // 1. 追加：记录序号 2
+        Polygon appended = square(40, 40, 5);
+        try (ShapefileUpdater updater = new ShapefileUpdater(shp)) {
+            updater.append(appended, row(3, "c"));
+        }
+        expectedGeometry.put(3L, appended);
+        expectedName.put(3L, "c");
+        verify(shp, expectedGeometry, expectedName);
+
+        // 2. 原地 upsert：顶点数相同，记录 0 原地覆盖；3. 几何变长：记录 1 作废，新记录序号 3
+        Polygon inPlace = square(1, 1, 8);
+        Polygon longer = star(25, 5, 6, 8);
+        try (ShapefileUpdater updater = new ShapefileUpdater(shp)) {
+            updater.upsert("id", inPlace, row(1, "a2"));
+            updater.upsert("id", longer, row(2, "b2"));
+        }
+        expectedGeometry.put(1L, inPlace);
+        expectedGeometry.put(2L, longer);
+        expectedName.put(1L, "a2");
+        expectedName.put(2L, "b2");
+        verify(shp, expectedGeometry, expectedName);
+
+        // 只改属性，几何保持不变
+        try (ShapefileUpdater updater = new ShapefileUpdater(shp)) {
+            updater.upsert("id", null, row(3, "c2"));
+        }
+        expectedName.put(3L, "c2");
+        verify(shp, expectedGeometry, expectedName);
+
+        ShapefileDeltaIndex delta = ShapefileDeltaIndex.load(shp);
+        check(delta.query(appended.getEnvelopeInternal()).contains(2), "增量索引缺少追加的记录 2");
+        check(delta.query(inPlace.getEnvelopeInternal()).contains(0), "增量索引缺少原地改动的记录 0");
+        check(delta.query(longer.getEnvelopeInternal()).contains(3), "增量索引缺少移到末尾的记录 3");
+        check(!delta.query(longer.getEnvelopeInternal()).contains(1), "已作废的记录 1 仍在增量索引中");
+
+        ShapefileUpdater.mergeSpatialIndex(shp);
+        check(!ShapefileDeltaIndex.fileFor(shp).exists(), "合并后 .dix 未删除");
+        verify(shp, expectedGeometry, expectedName);
+    }
+
+    /**
+     * 用 ShapefileDataStore 读回整个图层：每个键恰有一条非空几何记录，几何和属性与预期一致，文件头范围覆盖全部几何；
+     * 作废的记录只允许以空几何出现
+     */
+    private static void verify(File shp, Map<Long, Geometry> expectedGeometry, Map<Long, String> expectedName) throws IOException {
+        ShapefileDataStore dataStore = new ShapefileDataStore(shp.toURI().toURL());
+        dataStore.setCharset(StandardCharsets.UTF_8);
+        try {
+            Map<Long, SimpleFeature> live = new TreeMap<>();
+            try (SimpleFeatureIterator it = dataStore.getFeatureSource().getFeatures().features()) {
+                while (it.hasNext()) {
+                    SimpleFeature feature = it.next();
+                    Geometry g = (Geometry) feature.getDefaultGeometry();
+                    if (g == null || g.isEmpty()) {
+                        continue;
+                    }
+                    long id = ((Number) feature.getAttribute("id")).longValue();
+                    check(live.put(id, feature) == null, "键 " + id + " 有多条有效记录");
+                }
+            }
+            check(live.keySet().equals(expectedGeometry.keySet()), "键集合不一致: " + live.keySet());
+            org.locationtech.jts.geom.Envelope all = new org.locationtech.jts.geom.Envelope();
+            for (Map.Entry<Long, SimpleFeature> entry : live.entrySet()) {
+                Geometry actual = (Geometry) entry.getValue().getDefaultGeometry();
+                Geometry expected = expectedGeometry.get(entry.getKey());
+                check(actual.equalsTopo(expected), "键 " + entry.getKey() + " 的几何不一致: " + actual);
+                check(expectedName.get(entry.getKey()).equals(entry.getValue().getAttribute("name")),
+                        "键 " + entry.getKey() + " 的属性不一致: " + entry.getValue().getAttribute("name"));
+                all.expandToInclude(expected.getEnvelopeInternal());
+            }
+            check(dataStore.getFeatureSource().getBounds().contains(all), "文件头范围未覆盖全部几何");
+        } finally {
+            dataStore.dispose();
+        }
+    }
+
+    private static Map<String, Object> row(long id, String name) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("id", id);
+        row.put("name", name);
+        return row;
+    }
+
+    private static Polygon square(double x, double y, double size) {
+        return GEOMETRY_FACTORY.createPolygon(new Coordinate[]{
+                new Coordinate(x, y), new Coordinate(x, y + size), new Coordinate(x + size, y + size),
+                new Coordinate(x + size, y), new Coordinate(x, y)});
+    }
+
+    /**
+     * 顶点数多于正方形的星形，写入时比原记录长
+     */
+    private static Polygon star(double cx, double cy, double radius, int points) {
+        Coordinate[] ring = new Coordinate[points * 2 + 1];
+        for (int i = 0; i < points * 2; i++) {
+            double r = i % 2 == 0 ? radius : radius / 2;
+            double angle = -Math.PI * i / points;
+            ring[i] = new Coordinate(cx + r * Math.cos(angle), cy + r * Math.sin(angle));
+        }
+        ring[ring.length - 1] = ring[0];
+        return GEOMETRY_FACTORY.createPolygon(ring);
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new IllegalStateException(message);
+        }
+    }
+}
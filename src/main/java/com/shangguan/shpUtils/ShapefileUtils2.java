@@ -1,5 +1,6 @@
 package com.shangguan.shpUtils;
 
+import com.shangguan.utils.CrsRegistry;
 import org.geotools.data.DataStore;
 import org.geotools.data.DataStoreFinder;
 import org.geotools.data.FeatureSource;
@@ -41,18 +42,22 @@ public class ShapefileUtils2 {
     private static final Logger logger = LoggerFactory.getLogger(ShapefileUtils2.class);
     private static final GeometryFactory GEOMETRY_FACTORY = JTSFactoryFinder.getGeometryFactory(null);
 
-    // 默认的坐标参考系
-    private static final CoordinateReferenceSystem DEFAULT_CRS;
+    // shapefile 相关扩展名
+    static final String[] SHAPEFILE_EXTENSIONS = {".shp", ".shx", ".dbf", ".prj", ".cpg", ".qix", ".fix", ".sbn", ".sbx"};
 
-    static {
-        CoordinateReferenceSystem crs = null;
-        try {
-            // 尝试使用EPSG:4326 (WGS84)作为默认CRS
-            crs = CRS.decode("EPSG:4326");
-        } catch (Exception e) {
-            logger.error("无法解码默认CRS EPSG:4326，ShapefileUtils2可能无法正常工作。", e);
+    // 默认的坐标参考系，第一次用到时才解析，避免类加载时初始化 EPSG 工厂
+    private static volatile CoordinateReferenceSystem defaultCrs;
+
+    private static CoordinateReferenceSystem defaultCrs() {
+        if (defaultCrs == null) {
+            try {
+                // 尝试使用EPSG:4326 (WGS84)作为默认CRS，命中内置表时不加载EPSG数据库
+                defaultCrs = CrsRegistry.decode("EPSG:4326");
+            } catch (Exception e) {
+                logger.error("无法解码默认CRS EPSG:4326，ShapefileUtils2可能无法正常工作。", e);
+            }
         }
-        DEFAULT_CRS = crs;
+        return defaultCrs;
     }
 
     /**
@@ -78,9 +83,24 @@ public class ShapefileUtils2 {
      * @throws IOException 如果写入失败
      */
     public static void createPointShapefile(File file, List<Point> points, List<Map<String, Object>> attributesList, CoordinateReferenceSystem crs) throws IOException {
+        createPointShapefile(file, points, attributesList, crs, null);
+    }
+
+    /**
+     * 创建点图层Shapefile，按写出参数做几何预处理和分卷
+     *
+     * @param file        输出的shp文件路径
+     * @param points      点几何对象列表
+     * @param attributesList 每个点的属性列表，列表中每个Map对应一个点的属性，key为属性名，value为属性值
+     * @param crs         坐标参考系，如果为null则使用默认WGS84
+     * @param options     写出参数，为null时不预处理、按默认阈值分卷
+     * @throws IOException 如果写入失败
+     */
+    public static void createPointShapefile(File file, List<Point> points, List<Map<String, Object>> attributesList, CoordinateReferenceSystem crs,
+                                            ShapefileWriteOptions options) throws IOException {
         List<AttributeDescriptor> defaultAttrs = Arrays.asList(new AttributeDescriptor("name", String.class));
         SimpleFeatureType featureType = createFeatureType("PointLayer", Point.class, attributesList, defaultAttrs, crs);
-        createShapefile(file, featureType, points, attributesList);
+        createShapefile(file, featureType, points, Point.class, attributesList, options);
     }
 
     /**
@@ -93,9 +113,24 @@ public class ShapefileUtils2 {
      * @throws IOException 如果写入失败
      */
     public static void createLineShapefile(File file, List<LineString> lines, List<Map<String, Object>> attributesList, CoordinateReferenceSystem crs) throws IOException {
+        createLineShapefile(file, lines, attributesList, crs, null);
+    }
+
+    /**
+     * 创建线图层Shapefile，按写出参数做几何预处理和分卷
+     *
+     * @param file        输出的shp文件路径
+     * @param lines       线几何对象列表
+     * @param attributesList 每条线的属性列表
+     * @param crs         坐标参考系，如果为null则使用默认WGS84
+     * @param options     写出参数，为null时不预处理、按默认阈值分卷
+     * @throws IOException 如果写入失败
+     */
+    public static void createLineShapefile(File file, List<LineString> lines, List<Map<String, Object>> attributesList, CoordinateReferenceSystem crs,
+                                           ShapefileWriteOptions options) throws IOException {
         List<AttributeDescriptor> defaultAttrs = Arrays.asList(new AttributeDescriptor("name", String.class));
         SimpleFeatureType featureType = createFeatureType("LineLayer", LineString.class, attributesList, defaultAttrs, crs);
-        createShapefile(file, featureType, lines, attributesList);
+        createShapefile(file, featureType, lines, LineString.class, attributesList, options);
     }
 
     /**
@@ -108,9 +143,24 @@ public class ShapefileUtils2 {
      * @throws IOException 如果写入失败
      */
     public static void createPolygonShapefile(File file, List<Polygon> polygons, List<Map<String, Object>> attributesList, CoordinateReferenceSystem crs) throws IOException {
+        createPolygonShapefile(file, polygons, attributesList, crs, null);
+    }
+
+    /**
+     * 创建面图层Shapefile，按写出参数做几何预处理和分卷
+     *
+     * @param file        输出的shp文件路径
+     * @param polygons    面几何对象列表
+     * @param attributesList 每个面的属性列表
+     * @param crs         坐标参考系，如果为null则使用默认WGS84
+     * @param options     写出参数，为null时不预处理、按默认阈值分卷
+     * @throws IOException 如果写入失败
+     */
+    public static void createPolygonShapefile(File file, List<Polygon> polygons, List<Map<String, Object>> attributesList, CoordinateReferenceSystem crs,
+                                              ShapefileWriteOptions options) throws IOException {
         List<AttributeDescriptor> defaultAttrs = Arrays.asList(new AttributeDescriptor("name", String.class));
         SimpleFeatureType featureType = createFeatureType("PolygonLayer", Polygon.class, attributesList, defaultAttrs, crs);
-        createShapefile(file, featureType, polygons, attributesList);
+        createShapefile(file, featureType, polygons, Polygon.class, attributesList, options);
     }
 
     /**
@@ -123,9 +173,24 @@ public class ShapefileUtils2 {
      * @throws IOException 如果写入失败
      */
     public static void createMultiPointShapefile(File file, List<MultiPoint> multiPoints, List<Map<String, Object>> attributesList, CoordinateReferenceSystem crs) throws IOException {
+        createMultiPointShapefile(file, multiPoints, attributesList, crs, null);
+    }
+
+    /**
+     * 创建多点图层Shapefile，按写出参数做几何预处理和分卷
+     *
+     * @param file         输出的shp文件路径
+     * @param multiPoints  多点几何对象列表
+     * @param attributesList 每个多点的属性列表
+     * @param crs          坐标参考系，如果为null则使用默认WGS84
+     * @param options      写出参数，为null时不预处理、按默认阈值分卷
+     * @throws IOException 如果写入失败
+     */
+    public static void createMultiPointShapefile(File file, List<MultiPoint> multiPoints, List<Map<String, Object>> attributesList, CoordinateReferenceSystem crs,
+                                                 ShapefileWriteOptions options) throws IOException {
         List<AttributeDescriptor> defaultAttrs = Arrays.asList(new AttributeDescriptor("name", String.class));
         SimpleFeatureType featureType = createFeatureType("MultiPointLayer", MultiPoint.class, attributesList, defaultAttrs, crs);
-        createShapefile(file, featureType, multiPoints, attributesList);
+        createShapefile(file, featureType, multiPoints, MultiPoint.class, attributesList, options);
     }
 
     /**
@@ -138,9 +203,24 @@ public class ShapefileUtils2 {
      * @throws IOException 如果写入失败
      */
     public static void createMultiLineShapefile(File file, List<MultiLineString> multiLines, List<Map<String, Object>> attributesList, CoordinateReferenceSystem crs) throws IOException {
+        createMultiLineShapefile(file, multiLines, attributesList, crs, null);
+    }
+
+    /**
+     * 创建多线图层Shapefile，按写出参数做几何预处理和分卷
+     *
+     * @param file          输出的shp文件路径
+     * @param multiLines    多线几何对象列表
+     * @param attributesList 每个多线的属性列表
+     * @param crs           坐标参考系，如果为null则使用默认WGS84
+     * @param options       写出参数，为null时不预处理、按默认阈值分卷
+     * @throws IOException 如果写入失败
+     */
+    public static void createMultiLineShapefile(File file, List<MultiLineString> multiLines, List<Map<String, Object>> attributesList, CoordinateReferenceSystem crs,
+                                                ShapefileWriteOptions options) throws IOException {
         List<AttributeDescriptor> defaultAttrs = Arrays.asList(new AttributeDescriptor("name", String.class));
         SimpleFeatureType featureType = createFeatureType("MultiLineLayer", MultiLineString.class, attributesList, defaultAttrs, crs);
-        createShapefile(file, featureType, multiLines, attributesList);
+        createShapefile(file, featureType, multiLines, MultiLineString.class, attributesList, options);
     }
 
     /**
@@ -153,9 +233,24 @@ public class ShapefileUtils2 {
      * @throws IOException 如果写入失败
      */
     public static void createMultiPolygonShapefile(File file, List<MultiPolygon> multiPolygons, List<Map<String, Object>> attributesList, CoordinateReferenceSystem crs) throws IOException {
+        createMultiPolygonShapefile(file, multiPolygons, attributesList, crs, null);
+    }
+
+    /**
+     * 创建多面图层Shapefile，按写出参数做几何预处理和分卷
+     *
+     * @param file          输出的shp文件路径
+     * @param multiPolygons 多面几何对象列表
+     * @param attributesList 每个多面的属性列表
+     * @param crs           坐标参考系，如果为null则使用默认WGS84
+     * @param options       写出参数，为null时不预处理、按默认阈值分卷
+     * @throws IOException 如果写入失败
+     */
+    public static void createMultiPolygonShapefile(File file, List<MultiPolygon> multiPolygons, List<Map<String, Object>> attributesList, CoordinateReferenceSystem crs,
+                                                   ShapefileWriteOptions options) throws IOException {
         List<AttributeDescriptor> defaultAttrs = Arrays.asList(new AttributeDescriptor("name", String.class));
         SimpleFeatureType featureType = createFeatureType("MultiPolygonLayer", MultiPolygon.class, attributesList, defaultAttrs, crs);
-        createShapefile(file, featureType, multiPolygons, attributesList);
+        createShapefile(file, featureType, multiPolygons, MultiPolygon.class, attributesList, options);
     }
 
     /**
@@ -175,7 +270,7 @@ public class ShapefileUtils2 {
                                                        CoordinateReferenceSystem crs) throws IOException {
         SimpleFeatureTypeBuilder builder = new SimpleFeatureTypeBuilder();
         builder.setName(typeName);
-        builder.setCRS(crs != null ? crs : DEFAULT_CRS); // 使用传入的CRS或默认WGS84
+        builder.setCRS(crs != null ? crs : defaultCrs()); // 使用传入的CRS或默认WGS84
 
         // 添加几何属性
         builder.add("the_geom", geomClass);
@@ -183,6 +278,7 @@ public class ShapefileUtils2 {
         // 收集所有属性名和类型
         Set<String> fieldNames = new HashSet<>();
         Map<String, Class<?>> fieldTypes = new HashMap<>();
+        Set<String> nullTypedFields = new HashSet<>();
 
         if (attributesList != null) {
             for (Map<String, Object> attrs : attributesList) {
@@ -194,6 +290,12 @@ public class ShapefileUtils2 {
                             fieldNames.add(attrName);
                             // 尝试确定属性类型，如果value为null，则默认为String.class
                             fieldTypes.put(attrName, attrValue != null ? attrValue.getClass() : String.class);
+                            if (attrValue == null) {
+                                nullTypedFields.add(attrName);
+                            }
+                        } else if (attrValue != null && nullTypedFields.remove(attrName)) {
+                            // 首次出现时为null，用后续第一个非null值的类型
+                            fieldTypes.put(attrName, attrValue.getClass());
                         }
                     }
                 }
@@ -223,10 +325,18 @@ public class ShapefileUtils2 {
      * @param file           输出的shp文件路径
      * @param featureType    要素类型定义
      * @param geometries     几何对象列表
+     * @param geometryType   图层几何类型，预处理后类型变化时转换回该类型
      * @param attributesList 对应每个几何对象的属性列表，顺序应与geometries一致
+     * @param options        写出参数，为null时使用默认值
      * @throws IOException 如果写入失败
      */
-    private static <T extends Geometry> void createShapefile(File file, SimpleFeatureType featureType, List<T> geometries, List<Map<String, Object>> attributesList) throws IOException {
+    private static <T extends Geometry> void createShapefile(File file, SimpleFeatureType featureType, List<T> geometries, Class<T> geometryType,
+                                                             List<Map<String, Object>> attributesList, ShapefileWriteOptions options) throws IOException {
+        ShapefileWriteOptions opts = options != null ? options : new ShapefileWriteOptions();
+        if (opts.getPreprocess() != null) {
+            geometries = GeometryPreprocessor.process(geometries, opts.getPreprocess(), geometryType);
+        }
+
         // 创建文件父目录（如果不存在）
         File parentDir = file.getParentFile();
         if (parentDir != null && !parentDir.exists()) {
@@ -236,6 +346,30 @@ public class ShapefileUtils2 {
             }
         }
 
+        // 超过 2GB 格式上限时自动分卷为 name_part2、name_part3……，各分卷并行写出
+        List<T> toWrite = geometries;
+        List<int[]> ranges = ShapefilePartitioner.partition(toWrite, featureType, opts.getMaxPartBytes());
+        ShapefilePartitioner.writeParts(file, ranges, (partFile, start, end) -> {
+            List<Map<String, Object>> partAttrs = null;
+            if (attributesList != null) {
+                partAttrs = attributesList.subList(Math.min(start, attributesList.size()), Math.min(end, attributesList.size()));
+            }
+            writeShapefilePart(partFile, featureType, toWrite.subList(start, end), partAttrs, start);
+        });
+    }
+
+    /**
+     * 写出单个Shapefile文件
+     *
+     * @param file           输出的shp文件路径
+     * @param featureType    要素类型定义
+     * @param geometries     几何对象列表
+     * @param attributesList 对应每个几何对象的属性列表
+     * @param indexOffset    本分卷第一个要素在全部要素中的下标，用于生成默认名称
+     * @throws IOException 如果写入失败
+     */
+    private static <T extends Geometry> void writeShapefilePart(File file, SimpleFeatureType featureType, List<T> geometries, List<Map<String, Object>> attributesList,
+                                                                int indexOffset) throws IOException {
         Map<String, Object> params = new HashMap<>();
         params.put("url", file.toURI().toURL());
         params.put("create spatial index", Boolean.TRUE); // 创建空间索引
@@ -269,7 +403,7 @@ public class ShapefileUtils2 {
                     } else {
                         // 如果没有提供属性列表，尝试设置一个默认的name属性
                         try {
-                            feature.setAttribute("name", geom.getGeometryType() + "_" + i);
+                            feature.setAttribute("name", geom.getGeometryType() + "_" + (indexOffset + i));
                         } catch (IllegalArgumentException e) {
                             // 如果Schema中没有'name'属性，则忽略
                             logger.debug("Schema中没有'name'属性，无法设置默认名称。");
@@ -291,15 +425,13 @@ public class ShapefileUtils2 {
     }
 
     /**
-     * 将同名的shapefile相关文件打包为zip
+     * 将同名的shapefile相关文件（含自动分卷）打包为zip
      *
      * @param baseName 文件基础名（如"polygon1"，不带后缀），例如：/path/to/my_shapefile
      * @param zipName  要生成的压缩包名称（如"my_shapefile.zip"），例如：/path/to/my_shapefile.zip
      * @throws IOException IO异常
      */
     public static void zipShapefile(String baseName, String zipName) throws IOException {
-        // shapefile 相关扩展名
-        String[] extensions = {".shp", ".shx", ".dbf", ".prj", ".cpg", ".qix", ".fix", ".sbn", ".sbx"};
         File zipFile = new File(zipName);
         // 确保zip文件目录存在
         File parentDir = zipFile.getParentFile();
@@ -311,23 +443,7 @@ public class ShapefileUtils2 {
         }
 
         try (ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(zipFile))) {
-            for (String ext : extensions) {
-                File f = new File(baseName + ext);
-                if (f.exists()) {
-                    try (FileInputStream fis = new FileInputStream(f)) {
-                        zos.putNextEntry(new ZipEntry(f.getName())); // 只保留文件名，不带路径
-                        byte[] buffer = new byte[4096]; // 增加缓冲区大小
-                        int len;
-                        while ((len = fis.read(buffer)) > 0) {
-                            zos.write(buffer, 0, len);
-                        }
-                        zos.closeEntry();
-                        logger.debug("已将文件 '{}' 添加到ZIP。", f.getName());
-                    }
-                } else {
-                    logger.debug("文件 '{}' 不存在，跳过压缩。", f.getName());
-                }
-            }
+            addShapefileToZip(zos, baseName);
             logger.info("压缩完成，生成文件：{}", zipFile.getAbsolutePath());
         } catch (IOException e) {
             logger.error("压缩Shapefile失败: {}", zipName, e);
@@ -335,6 +451,82 @@ public class ShapefileUtils2 {
         }
     }
 
+    /**
+     * 把同名的shapefile相关文件（含自动分卷）写入已打开的zip流，条目只保留文件名
+     *
+     * @param zos      zip输出流
+     * @param baseName 文件基础名（不带后缀）
+     * @throws IOException IO异常
+     */
+    static void addShapefileToZip(ZipOutputStream zos, String baseName) throws IOException {
+        addShapefileFilesToZip(zos, baseName);
+        // 自动分卷产生的 name_part2、name_part3……
+        for (int part = 2; new File(baseName + "_part" + part + ".shp").exists(); part++) {
+            addShapefileFilesToZip(zos, baseName + "_part" + part);
+        }
+    }
+
+    private static void addShapefileFilesToZip(ZipOutputStream zos, String baseName) throws IOException {
+        // 有增量索引时 .qix 缺少部分记录，其他软件不识别 .dix，不打包 .qix，由接收方自行重建
+        boolean partialIndex = new File(baseName + ".dix").exists();
+        for (String ext : SHAPEFILE_EXTENSIONS) {
+            if (partialIndex && ext.equals(".qix")) {
+                logger.debug("图层 '{}' 有未合并的增量索引，跳过 .qix。", baseName);
+                continue;
+            }
+            File f = new File(baseName + ext);
+            if (f.exists()) {
+                try (FileInputStream fis = new FileInputStream(f)) {
+                    zos.putNextEntry(new ZipEntry(f.getName())); // 只保留文件名，不带路径
+                    byte[] buffer = new byte[4096]; // 增加缓冲区大小
+                    int len;
+                    while ((len = fis.read(buffer)) > 0) {
+                        zos.write(buffer, 0, len);
+                    }
+                    zos.closeEntry();
+                    logger.debug("已将文件 '{}' 添加到ZIP。", f.getName());
+                }
+            } else {
+                logger.debug("文件 '{}' 不存在，跳过压缩。", f.getName());
+            }
+        }
+    }
+
+    /**
+     * 向已有Shapefile追加要素，不重写原有数据（见 {@link ShapefileUpdater}）
+     *
+     * @param file           已有的shp文件
+     * @param geometries     新增几何，类型须与图层一致
+     * @param attributesList 对应每个几何对象的属性列表
+     * @throws IOException 如果写入失败
+     */
+    public static void appendToShapefile(File file, List<? extends Geometry> geometries, List<Map<String, Object>> attributesList) throws IOException {
+        try (ShapefileUpdater updater = new ShapefileUpdater(file)) {
+            for (int i = 0; i < geometries.size(); i++) {
+                updater.append(geometries.get(i), attributesList != null && i < attributesList.size() ? attributesList.get(i) : null);
+            }
+        }
+    }
+
+    /**
+     * 按键字段批量更新已有Shapefile：键已存在则更新该要素，否则追加（见 {@link ShapefileUpdater}）
+     *
+     * @param file           已有的shp文件
+     * @param keyField       键字段名
+     * @param geometries     几何列表，元素为 null 时保持原几何
+     * @param attributesList 属性列表，每个都须包含键字段
+     * @param batchSize      每批提交的变更数
+     * @throws IOException 如果写入失败
+     */
+    public static void upsertShapefile(File file, String keyField, List<? extends Geometry> geometries,
+                                       List<Map<String, Object>> attributesList, int batchSize) throws IOException {
+        try (ShapefileUpdater updater = new ShapefileUpdater(file, batchSize)) {
+            for (int i = 0; i < attributesList.size(); i++) {
+                updater.upsert(keyField, geometries != null && i < geometries.size() ? geometries.get(i) : null, attributesList.get(i));
+            }
+        }
+    }
+
     /**
      * 从WKT（Well-Known Text）字符串解析几何对象
      *
@@ -401,6 +593,48 @@ public class ShapefileUtils2 {
         return features;
     }
 
+    /**
+     * 以列式存储读取Shapefile：坐标打包为 double[]，属性按列存为基本类型数组，适合常驻内存的大图层
+     *
+     * @param shpFile Shapefile文件
+     * @return 列式要素存储
+     * @throws IOException 如果读取失败
+     */
+    public static ColumnarFeatureStore readShapefileColumnar(File shpFile) throws IOException {
+        Map<String, Object> params = new HashMap<>();
+        params.put("url", shpFile.toURI().toURL());
+        params.put("charset", StandardCharsets.UTF_8);
+
+        DataStore dataStore = null;
+        try {
+            dataStore = DataStoreFinder.getDataStore(params);
+            if (dataStore == null) {
+                throw new IOException("无法打开Shapefile数据存储: " + shpFile.getAbsolutePath());
+            }
+            String typeName = dataStore.getTypeNames()[0];
+            FeatureSource<SimpleFeatureType, SimpleFeature> featureSource = dataStore.getFeatureSource(typeName);
+            ColumnarFeatureStore.Builder builder = ColumnarFeatureStore.builder(featureSource.getSchema());
+
+            logger.info("开始以列式存储读取Shapefile: {}", shpFile.getAbsolutePath());
+            try (FeatureIterator<SimpleFeature> iterator = featureSource.getFeatures(Filter.INCLUDE).features()) {
+                while (iterator.hasNext()) {
+                    builder.add(iterator.next());
+                }
+            }
+            ColumnarFeatureStore store = builder.build();
+            logger.info("Shapefile读取完成: {}", store);
+            return store;
+        } catch (IOException e) {
+            logger.error("读取Shapefile失败: {}", shpFile.getAbsolutePath(), e);
+            throw e;
+        } finally {
+            if (dataStore != null) {
+                dataStore.dispose();
+                logger.debug("DataStore资源已释放。");
+            }
+        }
+    }
+
     /**
      * 测试用例
      */
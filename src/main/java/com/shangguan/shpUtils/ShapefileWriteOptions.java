@@ -0,0 +1,41 @@
+package com.shangguan.shpUtils;
+
+/**
+ * @Author: shangguan
+ * @CreateTime: 2025-07-26
+ * @Description: 写出 Shapefile 的参数：写入前的几何预处理和分卷阈值。
+ * {@link ShapefileUtils2} 的 create*Shapefile 与 {@link ShapefileWriter#writeShapefile} 共用，
+ * 新增参数时加在这里，不再增加位置参数的重载。
+ */
+public class ShapefileWriteOptions {
+
+    private GeometryPreprocessor.Options preprocess;
+    private long maxPartBytes = ShapefilePartitioner.DEFAULT_MAX_PART_BYTES;
+
+    /**
+     * 写入前的几何预处理（简化、去重顶点、精度压缩、修复），为 null 时不做预处理
+     */
+    public ShapefileWriteOptions preprocess(GeometryPreprocessor.Options preprocess) {
+        this.preprocess = preprocess;
+        return this;
+    }
+
+    /**
+     * 单个分卷 .shp/.dbf 的最大字节数，超过时切换到下一个分卷，不能超过 2GB
+     */
+    public ShapefileWriteOptions maxPartBytes(long maxPartBytes) {
+        if (maxPartBytes <= 0 || maxPartBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("分卷阈值必须在 (0, 2GB] 之间: " + maxPartBytes);
+        }
+        this.maxPartBytes = maxPartBytes;
+        return this;
+    }
+
+    GeometryPreprocessor.Options getPreprocess() {
+        return preprocess;
+    }
+
+    long getMaxPartBytes() {
+        return maxPartBytes;
+    }
+}
@@ -24,6 +24,11 @@ public class ShapefileWriter {
         POINT, LINESTRING, POLYGON
     }
 
+    /**
+     * 写出单个图层并打包为 zip。中间的 shp/dbf 等文件写在临时目录中，打包后即删除。
+     * 返回的 zip 名为 baseFileName.zip，放在一个单独的临时目录里（上传时可直接用文件名），
+     * 用完后由调用方通过 {@link #deleteZip(File)} 连同该目录一起删除。
+     */
     public static File writeShapefileWithZip(
             String baseFileName,
             GeometryType geometryType,
@@ -33,33 +38,84 @@ public class ShapefileWriter {
     ) throws Exception {
 
         File tempDir = Files.createTempDirectory("shp_layer").toFile();
-        File shpFile = new File(tempDir, baseFileName + ".shp");
+        try {
+            writeShapefile(tempDir, baseFileName, geometryType, data, attributeTypes, geometryFieldName);
 
-        // 1. 定义图层结构
-        SimpleFeatureTypeBuilder typeBuilder = new SimpleFeatureTypeBuilder();
-        typeBuilder.setName(baseFileName);
-        typeBuilder.setCRS(DefaultGeographicCRS.WGS84);
-
-        // 添加几何字段
-        switch (geometryType) {
-            case POINT:
-                typeBuilder.add(geometryFieldName, Point.class);
-                break;
-            case LINESTRING:
-                typeBuilder.add(geometryFieldName, LineString.class);
-                break;
-            case POLYGON:
-                typeBuilder.add(geometryFieldName, Polygon.class);
-                break;
+            // 打包 ZIP（放在单独的临时目录中以保留原文件名，图层临时目录整体清理）
+            File zipDir = Files.createTempDirectory("shp_zip").toFile();
+            File zipFile = new File(zipDir, baseFileName + ".zip");
+            try (FileOutputStream fos = new FileOutputStream(zipFile);
+                 ZipOutputStream zos = new ZipOutputStream(fos)) {
+                ShapefileUtils2.addShapefileToZip(zos, new File(tempDir, baseFileName).getPath());
+            } catch (IOException e) {
+                deleteRecursively(zipDir);
+                throw e;
+            }
+            return zipFile; // 可用于上传 MinIO
+        } finally {
+            deleteRecursively(tempDir);
         }
+    }
 
-        for (Map.Entry<String, Class<?>> entry : attributeTypes.entrySet()) {
-            if (!entry.getKey().equals(geometryFieldName)) {
-                typeBuilder.add(entry.getKey(), entry.getValue());
-            }
+    /**
+     * 删除 {@link #writeShapefileWithZip} 返回的 zip 及其所在的临时目录
+     */
+    public static void deleteZip(File zipFile) {
+        if (zipFile == null) {
+            return;
+        }
+        File dir = zipFile.getParentFile();
+        // 只清理本类创建的临时目录，zip 被移动到别处时只删文件本身
+        if (dir != null && dir.getName().startsWith("shp_zip")) {
+            deleteRecursively(dir);
+        } else {
+            deleteRecursively(zipFile);
         }
+    }
 
-        SimpleFeatureType featureType = typeBuilder.buildFeatureType();
+    /**
+     * 在指定目录下写出一个图层的 shapefile
+     *
+     * @param dir               输出目录
+     * @param baseFileName      图层文件名（不带后缀）
+     * @param geometryType      几何类型
+     * @param data              每行数据，key 为字段名，几何放在 geometryFieldName 字段
+     * @param attributeTypes    字段类型
+     * @param geometryFieldName 几何字段名
+     * @return 写出的 .shp 文件（第 1 个分卷），其余分卷为同目录下的 name_part2.shp……
+     */
+    public static File writeShapefile(
+            File dir,
+            String baseFileName,
+            GeometryType geometryType,
+            List<Map<String, Object>> data,
+            Map<String, Class<?>> attributeTypes,
+            String geometryFieldName
+    ) throws Exception {
+        return writeShapefile(dir, baseFileName, geometryType, data, attributeTypes, geometryFieldName, null);
+    }
+
+    /**
+     * 在指定目录下写出一个图层的 shapefile，按写出参数做几何预处理和分卷
+     *
+     * @param options 写出参数，为 null 时不预处理、按默认阈值分卷
+     * @return 写出的 .shp 文件（第 1 个分卷），其余分卷为同目录下的 name_part2.shp……
+     * @see #writeShapefile(File, String, GeometryType, List, Map, String)
+     */
+    public static File writeShapefile(
+            File dir,
+            String baseFileName,
+            GeometryType geometryType,
+            List<Map<String, Object>> data,
+            Map<String, Class<?>> attributeTypes,
+            String geometryFieldName,
+            ShapefileWriteOptions options
+    ) throws Exception {
+        ShapefileWriteOptions opts = options != null ? options : new ShapefileWriteOptions();
+        File shpFile = new File(dir, baseFileName + ".shp");
+
+        // 1. 定义图层结构
+        SimpleFeatureType featureType = buildFeatureType(baseFileName, geometryType, attributeTypes, geometryFieldName);
 
         // 2. 构建 Feature
         List<SimpleFeature> features = new ArrayList<>();
@@ -72,7 +128,37 @@ public class ShapefileWriter {
             features.add(featureBuilder.buildFeature("fid." + (fid++)));
         }
 
-        // 3. 写入 SHP
+        // 3. 写入 SHP：超过 2GB 格式上限时自动分卷，分卷并行写出
+        List<Geometry> geometries = new ArrayList<>(features.size());
+        for (SimpleFeature feature : features) {
+            geometries.add((Geometry) feature.getDefaultGeometry());
+        }
+        if (opts.getPreprocess() != null) {
+            Class<? extends Geometry> binding = featureType.getGeometryDescriptor().getType().getBinding().asSubclass(Geometry.class);
+            geometries = preprocess(geometries, opts.getPreprocess(), binding);
+            for (int i = 0; i < features.size(); i++) {
+                features.get(i).setDefaultGeometry(geometries.get(i));
+            }
+        }
+        List<int[]> ranges = ShapefilePartitioner.partition(geometries, featureType, opts.getMaxPartBytes());
+        ShapefilePartitioner.writeParts(shpFile, ranges,
+                (partFile, start, end) -> writePart(partFile, featureType, features.subList(start, end)));
+        return shpFile;
+    }
+
+    /**
+     * 按图层几何类型预处理，类型变化（如 Polygon 修复成 MultiPolygon）时转换回该类型
+     */
+    private static <T extends Geometry> List<Geometry> preprocess(List<Geometry> geometries, GeometryPreprocessor.Options options,
+                                                                  Class<T> type) {
+        List<T> typed = new ArrayList<>(geometries.size());
+        for (Geometry g : geometries) {
+            typed.add(type.cast(g));
+        }
+        return new ArrayList<>(GeometryPreprocessor.process(typed, options, type));
+    }
+
+    private static void writePart(File shpFile, SimpleFeatureType featureType, List<SimpleFeature> features) throws Exception {
         Map<String, Object> params = new HashMap<>();
         params.put("url", shpFile.toURI().toURL());
         params.put("create spatial index", Boolean.TRUE);
@@ -101,28 +187,49 @@ public class ShapefileWriter {
             transaction.close();
             dataStore.dispose();
         }
+    }
 
-        // 4. 打包 ZIP
-        File zipFile = new File(tempDir, baseFileName + ".zip");
-        try (FileOutputStream fos = new FileOutputStream(zipFile);
-             ZipOutputStream zos = new ZipOutputStream(fos)) {
-            for (String suffix : Arrays.asList(".shp", ".shx", ".dbf", ".prj", ".cpg")) {
-                File f = new File(tempDir, baseFileName + suffix);
-                if (f.exists()) {
-                    try (FileInputStream fis = new FileInputStream(f)) {
-                        zos.putNextEntry(new ZipEntry(f.getName()));
-                        byte[] buffer = new byte[1024];
-                        int length;
-                        while ((length = fis.read(buffer)) >= 0) {
-                            zos.write(buffer, 0, length);
-                        }
-                        zos.closeEntry();
-                    }
-                }
+    private static SimpleFeatureType buildFeatureType(String baseFileName, GeometryType geometryType,
+                                                      Map<String, Class<?>> attributeTypes, String geometryFieldName) {
+        SimpleFeatureTypeBuilder typeBuilder = new SimpleFeatureTypeBuilder();
+        typeBuilder.setName(baseFileName);
+        typeBuilder.setCRS(DefaultGeographicCRS.WGS84);
+
+        // 添加几何字段
+        switch (geometryType) {
+            case POINT:
+                typeBuilder.add(geometryFieldName, Point.class);
+                break;
+            case LINESTRING:
+                typeBuilder.add(geometryFieldName, LineString.class);
+                break;
+            case POLYGON:
+                typeBuilder.add(geometryFieldName, Polygon.class);
+                break;
+        }
+
+        for (Map.Entry<String, Class<?>> entry : attributeTypes.entrySet()) {
+            if (!entry.getKey().equals(geometryFieldName)) {
+                typeBuilder.add(entry.getKey(), entry.getValue());
             }
         }
 
-        return zipFile; // 可用于上传 MinIO
+        return typeBuilder.buildFeatureType();
+    }
+
+    /**
+     * 递归删除目录，失败时登记为退出时删除
+     */
+    static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        if (file.exists() && !file.delete()) {
+            file.deleteOnExit();
+        }
     }
 
     // 示例: 写入一个点图层并上传
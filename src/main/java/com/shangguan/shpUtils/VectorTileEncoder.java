@@ -0,0 +1,394 @@
+package com.shangguan.shpUtils;
+
+import org.locationtech.jts.geom.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @Author: shangguan
+ * @CreateTime: 2025-07-28
+ * @Description: 单个图层的 Mapbox Vector Tile（MVT 2.1）编码器。输入几何已经是瓦片坐标（0..extent，y 向下），
+ * 编码时取整、去除重复点、按规范调整环方向，属性键和值在图层内去重。protobuf 按线格式手工编码，不依赖额外库。
+ */
+class VectorTileEncoder {
+
+    private static final int MOVE_TO = 1;
+    private static final int LINE_TO = 2;
+    private static final int CLOSE_PATH = 7;
+
+    private static final int GEOM_POINT = 1;
+    private static final int GEOM_LINESTRING = 2;
+    private static final int GEOM_POLYGON = 3;
+
+    private final String layerName;
+    private final int extent;
+    private final List<String> keys = new ArrayList<>();
+    private final Map<String, Integer> keyIndex = new HashMap<>();
+    private final List<Object> values = new ArrayList<>();
+    private final Map<Object, Integer> valueIndex = new HashMap<>();
+    private final ProtoBuffer features = new ProtoBuffer();
+    private int featureCount;
+
+    // 当前要素的几何指令和游标
+    private final IntList commands = new IntList();
+    private final IntList tags = new IntList();
+    private final IntList points = new IntList();
+    private int cursorX, cursorY;
+
+    VectorTileEncoder(String layerName, int extent) {
+        this.layerName = layerName;
+        this.extent = extent;
+    }
+
+    /**
+     * 添加一个要素
+     *
+     * @param id         要素 id
+     * @param geometry   瓦片坐标下的几何，只编码维度等于 dimension 的部分
+     * @param dimension  图层几何维度：0 点，1 线，2 面
+     * @param names      属性名
+     * @param attributes 属性值，null 值不编码
+     * @return 取整后几何退化为空时返回 false，不写入要素
+     */
+    boolean addFeature(long id, Geometry geometry, int dimension, String[] names, Object[] attributes) {
+        commands.clear();
+        cursorX = 0;
+        cursorY = 0;
+        points.clear();
+        encodeParts(geometry, dimension);
+        if (points.size > 0) {
+            // 点/多点只能有一条 MoveTo 指令
+            commands.add(command(MOVE_TO, points.size / 2));
+            for (int i = 0; i < points.size; i += 2) {
+                moveCursor(points.data[i], points.data[i + 1]);
+            }
+        }
+        if (commands.size == 0) {
+            return false;
+        }
+
+        tags.clear();
+        for (int i = 0; i < names.length; i++) {
+            Object value = normalize(attributes[i]);
+            if (value == null) {
+                continue;
+            }
+            tags.add(keyIndex.computeIfAbsent(names[i], k -> {
+                keys.add(k);
+                return keys.size() - 1;
+            }));
+            tags.add(valueIndex.computeIfAbsent(value, v -> {
+                values.add(v);
+                return values.size() - 1;
+            }));
+        }
+
+        ProtoBuffer feature = new ProtoBuffer();
+        feature.varintField(1, id);
+        feature.packedField(2, tags);
+        feature.varintField(3, dimension == 0 ? GEOM_POINT : dimension == 1 ? GEOM_LINESTRING : GEOM_POLYGON);
+        feature.packedField(4, commands);
+        features.messageField(2, feature);
+        featureCount++;
+        return true;
+    }
+
+    /**
+     * 逐个编码维度匹配的组成部分，裁剪结果中可能混有低维部分或嵌套集合
+     */
+    private void encodeParts(Geometry collection, int dimension) {
+        for (int i = 0; i < collection.getNumGeometries(); i++) {
+            Geometry part = collection.getGeometryN(i);
+            if (part.isEmpty() || part.getDimension() != dimension) {
+                continue;
+            }
+            if (part instanceof Point) {
+                encodePoint(part.getCoordinate());
+            } else if (part instanceof LineString) {
+                encodeLine(part.getCoordinates());
+            } else if (part instanceof Polygon) {
+                Polygon polygon = (Polygon) part;
+                if (encodeRing(polygon.getExteriorRing().getCoordinates(), true)) {
+                    for (int h = 0; h < polygon.getNumInteriorRing(); h++) {
+                        encodeRing(polygon.getInteriorRingN(h).getCoordinates(), false);
+                    }
+                }
+            } else {
+                encodeParts(part, dimension);
+            }
+        }
+    }
+
+    int getFeatureCount() {
+        return featureCount;
+    }
+
+    /**
+     * 编码为只含本图层的 Tile 消息
+     */
+    byte[] encode() {
+        ProtoBuffer layer = new ProtoBuffer();
+        layer.varintField(15, 2);
+        layer.stringField(1, layerName);
+        layer.append(features);
+        for (String key : keys) {
+            layer.stringField(3, key);
+        }
+        for (Object value : values) {
+            ProtoBuffer v = new ProtoBuffer();
+            if (value instanceof String) {
+                v.stringField(1, (String) value);
+            } else if (value instanceof Double) {
+                v.doubleField(3, (Double) value);
+            } else if (value instanceof Long) {
+                v.varintField(6, zigZag64((Long) value));
+            } else {
+                v.varintField(7, (Boolean) value ? 1 : 0);
+            }
+            layer.messageField(4, v);
+        }
+        layer.varintField(5, extent);
+
+        ProtoBuffer tile = new ProtoBuffer();
+        tile.messageField(3, layer);
+        return tile.toByteArray();
+    }
+
+    private void encodePoint(Coordinate c) {
+        points.add((int) Math.round(c.x));
+        points.add((int) Math.round(c.y));
+    }
+
+    private void encodeLine(Coordinate[] coords) {
+        int[] xy = roundDistinct(coords, false);
+        int n = xy.length / 2;
+        if (n < 2) {
+            return;
+        }
+        commands.add(command(MOVE_TO, 1));
+        moveCursor(xy[0], xy[1]);
+        commands.add(command(LINE_TO, n - 1));
+        for (int i = 1; i < n; i++) {
+            moveCursor(xy[2 * i], xy[2 * i + 1]);
+        }
+    }
+
+    /**
+     * 编码一个环：外环在瓦片坐标（y 向下）下面积为正，内环为负
+     */
+    private boolean encodeRing(Coordinate[] coords, boolean exterior) {
+        int[] xy = roundDistinct(coords, true);
+        int n = xy.length / 2;
+        if (n < 3) {
+            return false;
+        }
+        long area2 = 0;
+        for (int i = 0; i < n; i++) {
+            int j = (i + 1) % n;
+            area2 += (long) xy[2 * i] * xy[2 * j + 1] - (long) xy[2 * j] * xy[2 * i + 1];
+        }
+        if (area2 == 0) {
+            return false;
+        }
+        boolean reverse = (area2 > 0) != exterior;
+        commands.add(command(MOVE_TO, 1));
+        int first = reverse ? n - 1 : 0;
+        moveCursor(xy[2 * first], xy[2 * first + 1]);
+        commands.add(command(LINE_TO, n - 1));
+        for (int k = 1; k < n; k++) {
+            int i = reverse ? n - 1 - k : k;
+            moveCursor(xy[2 * i], xy[2 * i + 1]);
+        }
+        commands.add(command(CLOSE_PATH, 1));
+        return true;
+    }
+
+    /**
+     * 坐标取整并去除相邻重复点；closed 为 true 时同时去掉与首点重合的末点
+     */
+    private static int[] roundDistinct(Coordinate[] coords, boolean closed) {
+        int[] xy = new int[coords.length * 2];
+        int n = 0;
+        for (Coordinate c : coords) {
+            int x = (int) Math.round(c.x);
+            int y = (int) Math.round(c.y);
+            if (n > 0 && xy[2 * n - 2] == x && xy[2 * n - 1] == y) {
+                continue;
+            }
+            xy[2 * n] = x;
+            xy[2 * n + 1] = y;
+            n++;
+        }
+        if (closed && n > 1 && xy[0] == xy[2 * n - 2] && xy[1] == xy[2 * n - 1]) {
+            n--;
+        }
+        int[] result = new int[n * 2];
+        System.arraycopy(xy, 0, result, 0, n * 2);
+        return result;
+    }
+
+    private void moveCursor(int x, int y) {
+        commands.add(zigZag32(x - cursorX));
+        commands.add(zigZag32(y - cursorY));
+        cursorX = x;
+        cursorY = y;
+    }
+
+    /**
+     * 属性值统一为 String / Double / Long / Boolean，便于去重和编码
+     */
+    private static Object normalize(Object value) {
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof Boolean || value instanceof String) {
+            return value;
+        }
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return ((Number) value).longValue();
+        }
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        return value.toString();
+    }
+
+    private static int command(int id, int count) {
+        return (id & 0x7) | (count << 3);
+    }
+
+    private static int zigZag32(int n) {
+        return (n << 1) ^ (n >> 31);
+    }
+
+    private static long zigZag64(long n) {
+        return (n << 1) ^ (n >> 63);
+    }
+
+    /**
+     * 可增长的 int 列表，避免装箱
+     */
+    static final class IntList {
+        int[] data = new int[64];
+        int size;
+
+        void add(int v) {
+            if (size == data.length) {
+                int[] grown = new int[size * 2];
+                System.arraycopy(data, 0, grown, 0, size);
+                data = grown;
+            }
+            data[size++] = v;
+        }
+
+        void clear() {
+            size = 0;
+        }
+    }
+
+    /**
+     * protobuf 线格式写出缓冲
+     */
+    static final class ProtoBuffer {
+        private byte[] buf = new byte[256];
+        private int size;
+
+        void varintField(int field, long value) {
+            tag(field, 0);
+            varint(value);
+        }
+
+        void doubleField(int field, double value) {
+            tag(field, 1);
+            long bits = Double.doubleToLongBits(value);
+            for (int i = 0; i < 8; i++) {
+                write((int) (bits >>> (8 * i)));
+            }
+        }
+
+        void stringField(int field, String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            tag(field, 2);
+            varint(bytes.length);
+            write(bytes, 0, bytes.length);
+        }
+
+        void messageField(int field, ProtoBuffer message) {
+            tag(field, 2);
+            varint(message.size);
+            write(message.buf, 0, message.size);
+        }
+
+        /**
+         * packed repeated uint32，空列表不写
+         */
+        void packedField(int field, IntList list) {
+            if (list.size == 0) {
+                return;
+            }
+            int length = 0;
+            for (int i = 0; i < list.size; i++) {
+                length += varintSize(list.data[i] & 0xFFFFFFFFL);
+            }
+            tag(field, 2);
+            varint(length);
+            for (int i = 0; i < list.size; i++) {
+                varint(list.data[i] & 0xFFFFFFFFL);
+            }
+        }
+
+        void append(ProtoBuffer other) {
+            write(other.buf, 0, other.size);
+        }
+
+        byte[] toByteArray() {
+            byte[] out = new byte[size];
+            System.arraycopy(buf, 0, out, 0, size);
+            return out;
+        }
+
+        private void tag(int field, int wireType) {
+            varint((field << 3) | wireType);
+        }
+
+        private void varint(long value) {
+            while ((value & ~0x7FL) != 0) {
+                write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+
+        private static int varintSize(long value) {
+            int n = 1;
+            while ((value & ~0x7FL) != 0) {
+                value >>>= 7;
+                n++;
+            }
+            return n;
+        }
+
+        private void write(int b) {
+            ensure(1);
+            buf[size++] = (byte) b;
+        }
+
+        private void write(byte[] bytes, int offset, int length) {
+            ensure(length);
+            System.arraycopy(bytes, offset, buf, size, length);
+            size += length;
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > buf.length) {
+                byte[] grown = new byte[Math.max(buf.length * 2, size + extra)];
+                System.arraycopy(buf, 0, grown, 0, size);
+                buf = grown;
+            }
+        }
+    }
+}
@@ -0,0 +1,654 @@
+package com.shangguan.shpUtils;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.geotools.data.DataStore;
+import org.geotools.data.DataStoreFinder;
+import org.geotools.data.Query;
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.feature.FeatureIterator;
+import org.geotools.geometry.jts.JTS;
+import org.geotools.geometry.jts.JTSFactoryFinder;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.referencing.CRS;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.locationtech.jts.geom.*;
+import org.locationtech.jts.geom.util.AffineTransformation;
+import org.locationtech.jts.operation.overlayng.OverlayNG;
+import org.locationtech.jts.operation.overlayng.OverlayNGRobust;
+import org.locationtech.jts.geom.util.GeometryFixer;
+import org.locationtech.jts.simplify.TopologyPreservingSimplifier;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.filter.FilterFactory2;
+import org.opengis.filter.identity.FeatureId;
+import org.opengis.referencing.FactoryException;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.opengis.referencing.operation.MathTransform;
+import org.opengis.referencing.operation.TransformException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @Author: shangguan
+ * @CreateTime: 2025-07-28
+ * @Description: 从 Shapefile 图层生成 Mapbox Vector Tile 瓦片目录（{z}/{x}/{y}.pbf，XYZ 方案）及 metadata.json。
+ * 每个级别按 8×8 瓦片分块并行处理：每块对数据存储做一次范围查询（有 .qix 时走空间索引），
+ * 要素流式读取、投影到 Web 墨卡托、按像素容差做保持拓扑的简化，再裁剪并直接编码进块内各瓦片，块完成即写出。
+ * 内存只与并行块的瓦片编码结果有关，不保存整个图层的要素；下一级只处理上一级非空块的子块。
+ * 前端按视野只取几 KB 的瓦片，不再下载整个压缩包。
+ */
+public class VectorTileGenerator {
+
+    private static final Logger logger = LoggerFactory.getLogger(VectorTileGenerator.class);
+
+    /** Web 墨卡托半周长（米） */
+    private static final double ORIGIN = 20037508.342789244;
+    private static final double MAX_LATITUDE = 85.0511287798066;
+
+    private static final FilterFactory2 FILTERS = CommonFactoryFinder.getFilterFactory2();
+    private static final GeometryFactory GEOMETRY_FACTORY = JTSFactoryFinder.getGeometryFactory(null);
+
+    /**
+     * 切片参数
+     */
+    public static class Options {
+        private int minZoom = 0;
+        private int maxZoom = 14;
+        private int extent = 4096;
+        private int buffer = 64;
+        private double simplifyPixels = 1.0;
+        private String[] attributes;
+        private String layerName;
+        private int parallelism = Runtime.getRuntime().availableProcessors();
+
+        public Options zoomRange(int minZoom, int maxZoom) {
+            if (minZoom < 0 || maxZoom > 22 || minZoom > maxZoom) {
+                throw new IllegalArgumentException("无效的级别范围: " + minZoom + "-" + maxZoom);
+            }
+            this.minZoom = minZoom;
+            this.maxZoom = maxZoom;
+            return this;
+        }
+
+        /**
+         * 瓦片坐标范围，默认 4096
+         */
+        public Options extent(int extent) {
+            this.extent = extent;
+            return this;
+        }
+
+        /**
+         * 瓦片四周的裁剪缓冲（瓦片坐标单位），避免线宽和标注在瓦片边缘被截断，默认 64
+         */
+        public Options buffer(int buffer) {
+            this.buffer = buffer;
+            return this;
+        }
+
+        /**
+         * 简化容差（瓦片像素），0 表示不简化，默认 1
+         */
+        public Options simplifyPixels(double simplifyPixels) {
+            this.simplifyPixels = simplifyPixels;
+            return this;
+        }
+
+        /**
+         * 写入瓦片的属性列，默认全部；传空数组表示不带属性
+         */
+        public Options attributes(String... attributes) {
+            this.attributes = attributes;
+            return this;
+        }
+
+        /**
+         * 图层名，默认为 Shapefile 的类型名
+         */
+        public Options layerName(String layerName) {
+            this.layerName = layerName;
+            return this;
+        }
+
+        public Options parallelism(int parallelism) {
+            this.parallelism = Math.max(1, parallelism);
+            return this;
+        }
+    }
+
+    /** 每个处理块的边长（瓦片数），一次范围查询处理一块内的全部瓦片 */
+    private static final int BLOCK = 8;
+
+    /**
+     * 图层信息，整个切片过程共用
+     */
+    private static class Layer {
+        DataStore dataStore;
+        String typeName;
+        String geometryName;
+        String[] names;
+        CoordinateReferenceSystem sourceCrs;
+        MathTransform toWgs84;
+        String layerName;
+        /** ShapefileUpdater 写入的增量空间索引，.qix 中缺失或过期的记录 */
+        ShapefileDeltaIndex delta;
+        final AtomicLong dropped = new AtomicLong();
+    }
+
+    /**
+     * 生成瓦片目录
+     *
+     * @param shpFile   输入 Shapefile
+     * @param outputDir 输出目录
+     * @param options   切片参数，可为 null
+     * @return 写出的瓦片数
+     * @throws IOException 如果读取或写出失败
+     */
+    public static long generate(File shpFile, File outputDir, Options options) throws IOException {
+        Options opts = options != null ? options : new Options();
+        Map<String, Object> params = new HashMap<>();
+        params.put("url", shpFile.toURI().toURL());
+        params.put("charset", StandardCharsets.UTF_8);
+
+        Layer layer = new Layer();
+        Map<String, Class<?>> fieldTypes = new LinkedHashMap<>();
+        long tiles = 0;
+        ForkJoinPool pool = null;
+        try {
+            layer.dataStore = DataStoreFinder.getDataStore(params);
+            if (layer.dataStore == null) {
+                throw new IOException("无法打开Shapefile数据存储: " + shpFile.getAbsolutePath());
+            }
+            layer.typeName = layer.dataStore.getTypeNames()[0];
+            layer.delta = ShapefileDeltaIndex.load(shpFile);
+            SimpleFeatureType schema = layer.dataStore.getSchema(layer.typeName);
+            layer.geometryName = schema.getGeometryDescriptor().getLocalName();
+            layer.layerName = opts.layerName != null ? opts.layerName : layer.typeName;
+            layer.names = selectAttributes(schema, opts.attributes);
+            for (String name : layer.names) {
+                fieldTypes.put(name, schema.getDescriptor(name).getType().getBinding());
+            }
+            layer.sourceCrs = schema.getCoordinateReferenceSystem();
+            layer.toWgs84 = wgs84Transform(layer.sourceCrs);
+
+            // 范围取自文件头，不需要遍历要素
+            ReferencedEnvelope bounds = layer.dataStore.getFeatureSource(layer.typeName).getBounds();
+            Envelope lonLatBounds = new Envelope();
+            if (bounds != null && !bounds.isEmpty()) {
+                lonLatBounds = layer.toWgs84 != null ? JTS.transform(bounds, layer.toWgs84) : new Envelope(bounds);
+            }
+
+            Files.createDirectories(outputDir.toPath());
+            if (!lonLatBounds.isNull()) {
+                Envelope mercator = toMercator(lonLatBounds);
+                pool = new ForkJoinPool(opts.parallelism);
+                Set<Long> parents = null;
+                for (int z = opts.minZoom; z <= opts.maxZoom; z++) {
+                    Set<Long> nonEmpty = Collections.newSetFromMap(new ConcurrentHashMap<>());
+                    tiles += generateZoom(pool, layer, z, candidateBlocks(z, mercator, parents), nonEmpty, outputDir, opts);
+                    parents = nonEmpty;
+                }
+            }
+            writeMetadata(new File(outputDir, "metadata.json"), layer.layerName, fieldTypes, lonLatBounds, opts);
+        } catch (IOException e) {
+            logger.error("矢量瓦片生成失败: {}", shpFile.getAbsolutePath(), e);
+            throw e;
+        } catch (FactoryException | TransformException e) {
+            logger.error("坐标转换失败: {}", shpFile.getAbsolutePath(), e);
+            throw new IOException("坐标转换失败: " + shpFile.getAbsolutePath(), e);
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+            if (layer.dataStore != null) {
+                layer.dataStore.dispose();
+            }
+        }
+        if (layer.dropped.get() > 0) {
+            logger.warn("共有 {} 次要素裁剪失败而未写入瓦片。", layer.dropped.get());
+        }
+        logger.info("矢量瓦片生成完成: {} 个瓦片 -> {}", tiles, outputDir.getAbsolutePath());
+        return tiles;
+    }
+
+    /**
+     * 本级需要处理的块：最小级别取图层范围内的全部块，之后只取上一级查询命中要素的块的子块
+     */
+    private static List<long[]> candidateBlocks(int z, Envelope mercator, Set<Long> parents) {
+        int tileCount = 1 << z;
+        double tileSize = 2 * ORIGIN / tileCount;
+        int blocks = Math.max(1, tileCount / BLOCK);
+        List<long[]> result = new ArrayList<>();
+        if (parents == null) {
+            int bx0 = tileIndex(mercator.getMinX() + ORIGIN, tileSize, tileCount) / BLOCK;
+            int bx1 = tileIndex(mercator.getMaxX() + ORIGIN, tileSize, tileCount) / BLOCK;
+            int by0 = tileIndex(ORIGIN - mercator.getMaxY(), tileSize, tileCount) / BLOCK;
+            int by1 = tileIndex(ORIGIN - mercator.getMinY(), tileSize, tileCount) / BLOCK;
+            for (int bx = bx0; bx <= bx1; bx++) {
+                for (int by = by0; by <= by1; by++) {
+                    result.add(new long[]{bx, by});
+                }
+            }
+        } else {
+            // 块边长固定为 BLOCK 个瓦片，每升一级块数翻倍（全图不足一块时保持一块）
+            int ratio = blocks / Math.max(1, (1 << (z - 1)) / BLOCK);
+            for (long key : parents) {
+                int px = (int) (key >>> 32);
+                int py = (int) key;
+                for (int bx = px * ratio; bx < px * ratio + ratio; bx++) {
+                    for (int by = py * ratio; by < py * ratio + ratio; by++) {
+                        result.add(new long[]{bx, by});
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 生成一个级别的所有瓦片：各块并行，每块一次范围查询，要素逐个简化、裁剪并编码进块内的瓦片，
+     * 块处理完即写出并释放，内存只与块内瓦片的编码结果有关
+     */
+    private static long generateZoom(ForkJoinPool pool, Layer layer, int z, List<long[]> blocks, Set<Long> nonEmpty,
+                                     File outputDir, Options opts) throws IOException {
+        AtomicLong written = new AtomicLong();
+        invoke(pool, () -> {
+            blocks.parallelStream().forEach(block -> {
+                try {
+                    written.addAndGet(generateBlock(layer, z, (int) block[0], (int) block[1], nonEmpty, outputDir, opts));
+                } catch (IOException e) {
+                    throw new IllegalStateException("瓦片块处理失败: " + z + "/" + block[0] + "/" + block[1], e);
+                }
+            });
+            return null;
+        });
+        logger.info("级别 {}：{} 个块，{} 个瓦片。", z, blocks.size(), written.get());
+        return written.get();
+    }
+
+    /**
+     * 处理一个块并返回写出的瓦片数。只要范围查询命中要素就把块记入 nonEmpty，
+     * 不看是否编码出瓦片：低级别下小面、短线会被量化成零面积或单点而不出瓦片，
+     * 若以此剪枝，更高级别本应可见的要素也会被跳过
+     */
+    private static int generateBlock(Layer layer, int z, int bx, int by, Set<Long> nonEmpty, File outputDir, Options opts) throws IOException {
+        int tileCount = 1 << z;
+        double tileSize = 2 * ORIGIN / tileCount;
+        double tolerance = opts.simplifyPixels * tileSize / opts.extent;
+        double bufferMeters = opts.buffer * tileSize / opts.extent;
+        int tx0 = bx * BLOCK, ty0 = by * BLOCK;
+        int tx1 = Math.min(tileCount, tx0 + BLOCK) - 1;
+        int ty1 = Math.min(tileCount, ty0 + BLOCK) - 1;
+        Envelope blockEnv = new Envelope(-ORIGIN + tx0 * tileSize - bufferMeters, -ORIGIN + (tx1 + 1) * tileSize + bufferMeters,
+                ORIGIN - (ty1 + 1) * tileSize - bufferMeters, ORIGIN - ty0 * tileSize + bufferMeters);
+
+        Map<Long, VectorTileEncoder> encoders = new HashMap<>();
+        try (FeatureIterator<SimpleFeature> iterator = query(layer, blockEnv)) {
+            while (iterator.hasNext()) {
+                SimpleFeature feature = iterator.next();
+                Geometry g = (Geometry) feature.getDefaultGeometry();
+                if (g == null || g.isEmpty()) {
+                    continue;
+                }
+                nonEmpty.add(((long) bx << 32) | by);
+                if (layer.toWgs84 != null) {
+                    g = JTS.transform(g, layer.toWgs84);
+                } else {
+                    g = g.copy();
+                }
+                g.apply(MERCATOR);
+                g.geometryChanged();
+                int dimension = g.getDimension();
+                g = simplify(g, tolerance);
+                if (g.isEmpty()) {
+                    continue;
+                }
+                Object[] values = new Object[layer.names.length];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = feature.getAttribute(layer.names[i]);
+                }
+                long id = featureId(feature);
+
+                Envelope env = g.getEnvelopeInternal();
+                int x0 = Math.max(tx0, tileIndex(env.getMinX() - bufferMeters + ORIGIN, tileSize, tileCount));
+                int x1 = Math.min(tx1, tileIndex(env.getMaxX() + bufferMeters + ORIGIN, tileSize, tileCount));
+                int y0 = Math.max(ty0, tileIndex(ORIGIN - env.getMaxY() - bufferMeters, tileSize, tileCount));
+                int y1 = Math.min(ty1, tileIndex(ORIGIN - env.getMinY() + bufferMeters, tileSize, tileCount));
+                for (int x = x0; x <= x1; x++) {
+                    for (int y = y0; y <= y1; y++) {
+                        Geometry tileGeometry = clipToTile(layer, g, id, x, y, tileSize, bufferMeters, opts.extent);
+                        if (tileGeometry != null) {
+                            encoders.computeIfAbsent(((long) x << 32) | y, k -> new VectorTileEncoder(layer.layerName, opts.extent))
+                                    .addFeature(id, tileGeometry, dimension, layer.names, values);
+                        }
+                    }
+                }
+            }
+        } catch (TransformException e) {
+            throw new IOException("坐标转换失败", e);
+        }
+
+        int written = 0;
+        for (Map.Entry<Long, VectorTileEncoder> entry : encoders.entrySet()) {
+            VectorTileEncoder encoder = entry.getValue();
+            if (encoder.getFeatureCount() == 0) {
+                continue;
+            }
+            int x = (int) (entry.getKey() >>> 32);
+            int y = (int) (long) entry.getKey();
+            File file = new File(outputDir, z + File.separator + x + File.separator + y + ".pbf");
+            Files.createDirectories(file.getParentFile().toPath());
+            Files.write(file.toPath(), encoder.encode());
+            written++;
+        }
+        return written;
+    }
+
+    /**
+     * 按块范围（Web 墨卡托）查询要素，范围换算到图层坐标系后交给数据存储，有 .qix 时走空间索引。
+     * 存在增量索引时，另按要素 ID 读取范围相交的增量记录，先返回它们，再返回 BBOX 查询中其余的要素
+     */
+    private static FeatureIterator<SimpleFeature> query(Layer layer, Envelope mercatorEnv) throws IOException {
+        Envelope lonLat = toLonLat(mercatorEnv);
+        ReferencedEnvelope bbox;
+        try {
+            bbox = layer.toWgs84 != null
+                    ? new ReferencedEnvelope(lonLat, DefaultGeographicCRS.WGS84).transform(layer.sourceCrs, true)
+                    : new ReferencedEnvelope(lonLat, layer.sourceCrs);
+        } catch (FactoryException | TransformException e) {
+            throw new IOException("查询范围转换失败", e);
+        }
+        List<String> properties = new ArrayList<>(Arrays.asList(layer.names));
+        properties.add(layer.geometryName);
+        String[] propertyNames = properties.toArray(new String[0]);
+        Query query = new Query(layer.typeName, FILTERS.bbox(FILTERS.property(layer.geometryName), bbox), propertyNames);
+        FeatureIterator<SimpleFeature> indexed = layer.dataStore.getFeatureSource(layer.typeName).getFeatures(query).features();
+        if (layer.delta.isEmpty()) {
+            return indexed;
+        }
+        List<Integer> records = layer.delta.query(bbox);
+        if (records.isEmpty()) {
+            return indexed;
+        }
+        Set<FeatureId> ids = new HashSet<>();
+        for (int record : records) {
+            ids.add(FILTERS.featureId(layer.typeName + "." + (record + 1)));
+        }
+        FeatureIterator<SimpleFeature> changed;
+        try {
+            changed = layer.dataStore.getFeatureSource(layer.typeName)
+                    .getFeatures(new Query(layer.typeName, FILTERS.id(ids), propertyNames)).features();
+        } catch (IOException | RuntimeException e) {
+            indexed.close();
+            throw e;
+        }
+        return new DeltaMergingIterator(changed, indexed);
+    }
+
+    /**
+     * 先遍历增量记录，再遍历 BBOX 查询结果并跳过已返回的要素 ID
+     */
+    private static class DeltaMergingIterator implements FeatureIterator<SimpleFeature> {
+        private final FeatureIterator<SimpleFeature> changed;
+        private final FeatureIterator<SimpleFeature> indexed;
+        private final Set<String> seen = new HashSet<>();
+        private SimpleFeature next;
+
+        DeltaMergingIterator(FeatureIterator<SimpleFeature> changed, FeatureIterator<SimpleFeature> indexed) {
+            this.changed = changed;
+            this.indexed = indexed;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next != null) {
+                return true;
+            }
+            if (changed.hasNext()) {
+                next = changed.next();
+                seen.add(next.getID());
+                return true;
+            }
+            while (indexed.hasNext()) {
+                SimpleFeature feature = indexed.next();
+                if (!seen.contains(feature.getID())) {
+                    next = feature;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public SimpleFeature next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            SimpleFeature feature = next;
+            next = null;
+            return feature;
+        }
+
+        @Override
+        public void close() {
+            try {
+                changed.close();
+            } finally {
+                indexed.close();
+            }
+        }
+    }
+
+    /**
+     * 裁剪到瓦片（含缓冲）并转为瓦片坐标；裁剪失败时计数并返回 null
+     */
+    private static Geometry clipToTile(Layer layer, Geometry g, long id, int x, int y, double tileSize,
+                                       double bufferMeters, int extent) {
+        double minX = -ORIGIN + x * tileSize;
+        double maxY = ORIGIN - y * tileSize;
+        Envelope clip = new Envelope(minX - bufferMeters, minX + tileSize + bufferMeters,
+                maxY - tileSize - bufferMeters, maxY + bufferMeters);
+        if (!clip.contains(g.getEnvelopeInternal())) {
+            try {
+                g = OverlayNGRobust.overlay(g, g.getFactory().toGeometry(clip), OverlayNG.INTERSECTION);
+            } catch (RuntimeException e) {
+                layer.dropped.incrementAndGet();
+                logger.warn("要素 {} 在瓦片 {}/{} 裁剪失败，未写入该瓦片: {}", id, x, y, e.getMessage());
+                return null;
+            }
+            if (g.isEmpty()) {
+                return null;
+            }
+        }
+        // 墨卡托坐标 -> 瓦片坐标（y 向下）
+        AffineTransformation toTile = new AffineTransformation(
+                extent / tileSize, 0, -minX * extent / tileSize,
+                0, -extent / tileSize, maxY * extent / tileSize);
+        return toTile.transform(g);
+    }
+
+    /**
+     * 保持拓扑的简化；面简化后仍无效时修复，保证裁剪能正常进行
+     */
+    private static Geometry simplify(Geometry g, double tolerance) {
+        if (tolerance <= 0 || g.getDimension() == 0) {
+            return g;
+        }
+        Geometry simplified = TopologyPreservingSimplifier.simplify(g, tolerance);
+        if (simplified.getDimension() == 2 && !simplified.isValid()) {
+            simplified = GeometryFixer.fix(simplified);
+        }
+        return simplified;
+    }
+
+    /**
+     * Shapefile 要素 ID 形如 "图层名.序号"，取序号
+     */
+    private static long featureId(SimpleFeature feature) {
+        String fid = feature.getID();
+        int dot = fid.lastIndexOf('.');
+        try {
+            return Long.parseLong(dot >= 0 ? fid.substring(dot + 1) : fid);
+        } catch (NumberFormatException e) {
+            return fid.hashCode() & 0xFFFFFFFFL;
+        }
+    }
+
+    private static Envelope toMercator(Envelope lonLat) {
+        Coordinate min = new Coordinate(lonLat.getMinX(), lonLat.getMinY());
+        Coordinate max = new Coordinate(lonLat.getMaxX(), lonLat.getMaxY());
+        CoordinateSequence seq = GEOMETRY_FACTORY.getCoordinateSequenceFactory().create(new Coordinate[]{min, max});
+        for (int i = 0; i < 2; i++) {
+            MERCATOR.filter(seq, i);
+        }
+        return new Envelope(seq.getX(0), seq.getX(1), seq.getY(0), seq.getY(1));
+    }
+
+    private static Envelope toLonLat(Envelope mercator) {
+        double minLon = Math.max(-180, mercator.getMinX() * 180.0 / ORIGIN);
+        double maxLon = Math.min(180, mercator.getMaxX() * 180.0 / ORIGIN);
+        double minLat = Math.toDegrees(Math.atan(Math.sinh(Math.max(-ORIGIN, mercator.getMinY()) * Math.PI / ORIGIN)));
+        double maxLat = Math.toDegrees(Math.atan(Math.sinh(Math.min(ORIGIN, mercator.getMaxY()) * Math.PI / ORIGIN)));
+        // 纬度裁到墨卡托有效范围时，向两极放开，避免漏掉极区要素
+        if (maxLat >= MAX_LATITUDE - 1e-9) maxLat = 90;
+        if (minLat <= -MAX_LATITUDE + 1e-9) minLat = -90;
+        return new Envelope(minLon, maxLon, minLat, maxLat);
+    }
+
+    private static int tileIndex(double offset, double tileSize, int tileCount) {
+        return Math.max(0, Math.min(tileCount - 1, (int) Math.floor(offset / tileSize)));
+    }
+
+    private static String[] selectAttributes(SimpleFeatureType schema, String[] requested) {
+        List<String> names = new ArrayList<>();
+        if (requested == null) {
+            for (AttributeDescriptor descriptor : schema.getAttributeDescriptors()) {
+                if (!Geometry.class.isAssignableFrom(descriptor.getType().getBinding())) {
+                    names.add(descriptor.getLocalName());
+                }
+            }
+        } else {
+            for (String name : requested) {
+                if (schema.getDescriptor(name) == null) {
+                    throw new IllegalArgumentException("属性不存在: " + name);
+                }
+                names.add(name);
+            }
+        }
+        return names.toArray(new String[0]);
+    }
+
+    /**
+     * 源坐标系到 WGS84（经度在前）的转换；源坐标系缺失或已是 WGS84 时返回 null
+     */
+    private static MathTransform wgs84Transform(CoordinateReferenceSystem crs) throws FactoryException {
+        if (crs == null || CRS.equalsIgnoreMetadata(crs, DefaultGeographicCRS.WGS84)) {
+            return null;
+        }
+        MathTransform transform = CRS.findMathTransform(crs, DefaultGeographicCRS.WGS84, true);
+        return transform.isIdentity() ? null : transform;
+    }
+
+    /**
+     * 经纬度原地转换为 Web 墨卡托
+     */
+    private static final CoordinateSequenceFilter MERCATOR = new CoordinateSequenceFilter() {
+        @Override
+        public void filter(CoordinateSequence seq, int i) {
+            double lon = seq.getX(i);
+            double lat = Math.max(-MAX_LATITUDE, Math.min(MAX_LATITUDE, seq.getY(i)));
+            seq.setOrdinate(i, 0, lon * ORIGIN / 180.0);
+            seq.setOrdinate(i, 1, Math.log(Math.tan((90.0 + lat) * Math.PI / 360.0)) * ORIGIN / Math.PI);
+        }
+
+        @Override
+        public boolean isDone() {
+            return false;
+        }
+
+        @Override
+        public boolean isGeometryChanged() {
+            return true;
+        }
+    };
+
+    /**
+     * 写出 TileJSON 风格的元数据，字段与 MBTiles metadata 表一致
+     */
+    private static void writeMetadata(File file, String layerName, Map<String, Class<?>> fieldTypes,
+                                      Envelope bounds, Options opts) throws IOException {
+        try (OutputStream out = new FileOutputStream(file);
+             JsonGenerator json = new JsonFactory().createGenerator(out, JsonEncoding.UTF8)) {
+            json.useDefaultPrettyPrinter();
+            json.writeStartObject();
+            json.writeStringField("tilejson", "2.2.0");
+            json.writeStringField("name", layerName);
+            json.writeStringField("format", "pbf");
+            json.writeStringField("scheme", "xyz");
+            json.writeArrayFieldStart("tiles");
+            json.writeString("{z}/{x}/{y}.pbf");
+            json.writeEndArray();
+            json.writeNumberField("minzoom", opts.minZoom);
+            json.writeNumberField("maxzoom", opts.maxZoom);
+            if (!bounds.isNull()) {
+                json.writeArrayFieldStart("bounds");
+                json.writeNumber(bounds.getMinX());
+                json.writeNumber(bounds.getMinY());
+                json.writeNumber(bounds.getMaxX());
+                json.writeNumber(bounds.getMaxY());
+                json.writeEndArray();
+                json.writeArrayFieldStart("center");
+                json.writeNumber(bounds.centre().x);
+                json.writeNumber(bounds.centre().y);
+                json.writeNumber(opts.minZoom);
+                json.writeEndArray();
+            }
+            json.writeArrayFieldStart("vector_layers");
+            json.writeStartObject();
+            json.writeStringField("id", layerName);
+            json.writeNumberField("minzoom", opts.minZoom);
+            json.writeNumberField("maxzoom", opts.maxZoom);
+            json.writeObjectFieldStart("fields");
+            for (Map.Entry<String, Class<?>> field : fieldTypes.entrySet()) {
+                Class<?> type = field.getValue();
+                json.writeStringField(field.getKey(), Boolean.class == type ? "Boolean"
+                        : Number.class.isAssignableFrom(type) ? "Number" : "String");
+            }
+            json.writeEndObject();
+            json.writeEndObject();
+            json.writeEndArray();
+            json.writeEndObject();
+        }
+    }
+
+    private static <T> T invoke(ForkJoinPool pool, Callable<T> task) throws IOException {
+        try {
+            return pool.submit(task).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("矢量瓦片生成被中断", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IllegalStateException && cause.getCause() instanceof IOException) {
+                throw (IOException) cause.getCause();
+            }
+            throw new IOException("矢量瓦片生成失败", cause);
+        }
+    }
+}
@@ -0,0 +1,413 @@
+package com.shangguan.utils;
+
+import org.gdal.gdal.Band;
+import org.gdal.gdal.Dataset;
+import org.gdal.gdal.WarpOptions;
+import org.gdal.gdal.gdal;
+import org.gdal.gdalconst.gdalconst;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.file.Files;
+import java.util.Vector;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 两期指数影像（如 GNDVI）的变化检测。
+ * <p>
+ * 先用 gdal.Warp 把两期影像配准到同一网格（两者范围的交集，取前一期的坐标系和分辨率），
+ * 配准结果是 VRT，只记录重采样关系，不落盘也不占内存。之后按 512×512 窗口逐块处理：
+ * 两期窗口在两个线程上并行读取到堆外缓冲，计算差值（后期 - 前期）或比值（后期 / 前期），
+ * 写入 Float32 差值 GeoTIFF 和分块的临时 RGBA TIF，同时累计统计量，最后把临时 TIF 转为 PNG 并写出地理参考附属文件。
+ * 内存占用只与窗口大小有关，整幅正射影像也可以直接处理。
+ */
+public class ChangeDetector {
+
+    static {
+        GdalRuntime.ensureRegistered();
+    }
+
+    private static final int TILE = 512;
+
+    /**
+     * 变化的计算方式
+     */
+    public enum Mode {
+        /** 后期 - 前期，无变化为 0 */
+        DIFFERENCE,
+        /** 后期 / 前期，无变化为 1；前期为 0 的像素记为无数据 */
+        RATIO
+    }
+
+    public static class Options {
+        private Mode mode = Mode.DIFFERENCE;
+        private double colorRange = 0.5;
+        private double changeThreshold = 0.1;
+        private String resampling = "bilinear";
+
+        public Options mode(Mode mode) {
+            this.mode = mode;
+            return this;
+        }
+
+        /**
+         * 色带半宽：偏离无变化值达到该值时取端点颜色
+         */
+        public Options colorRange(double colorRange) {
+            this.colorRange = colorRange;
+            return this;
+        }
+
+        /**
+         * 统计增加/减少像素数时的阈值（与无变化值之差的绝对值）
+         */
+        public Options changeThreshold(double changeThreshold) {
+            this.changeThreshold = changeThreshold;
+            return this;
+        }
+
+        /**
+         * 配准时的重采样方式，gdalwarp -r 的取值
+         */
+        public Options resampling(String resampling) {
+            this.resampling = resampling;
+            return this;
+        }
+    }
+
+    /**
+     * 变化统计，只计入两期都有效的像素
+     */
+    public static class Summary {
+        private long validCount;
+        private long increasedCount;
+        private long decreasedCount;
+        private double sum;
+        private double sumSquares;
+        private double min = Double.POSITIVE_INFINITY;
+        private double max = Double.NEGATIVE_INFINITY;
+
+        void add(double v, double center, double threshold) {
+            validCount++;
+            sum += v;
+            sumSquares += v * v;
+            if (v < min) min = v;
+            if (v > max) max = v;
+            if (v - center > threshold) {
+                increasedCount++;
+            } else if (center - v > threshold) {
+                decreasedCount++;
+            }
+        }
+
+        public long getValidCount() {
+            return validCount;
+        }
+
+        public long getIncreasedCount() {
+            return increasedCount;
+        }
+
+        public long getDecreasedCount() {
+            return decreasedCount;
+        }
+
+        public double getMean() {
+            return validCount == 0 ? Double.NaN : sum / validCount;
+        }
+
+        public double getStdDev() {
+            if (validCount == 0) return Double.NaN;
+            double mean = sum / validCount;
+            return Math.sqrt(Math.max(0, sumSquares / validCount - mean * mean));
+        }
+
+        public double getMin() {
+            return validCount == 0 ? Double.NaN : min;
+        }
+
+        public double getMax() {
+            return validCount == 0 ? Double.NaN : max;
+        }
+
+        @Override
+        public String toString() {
+            return "有效像素 " + validCount + "，均值 " + getMean() + "，标准差 " + getStdDev()
+                    + "，最小 " + getMin() + "，最大 " + getMax()
+                    + "，增加 " + increasedCount + "，减少 " + decreasedCount;
+        }
+    }
+
+    /**
+     * 计算两期影像的变化
+     *
+     * @param beforePath 前一期 TIF（取第 1 波段），决定输出的坐标系和分辨率
+     * @param afterPath  后一期 TIF（取第 1 波段）
+     * @param outputTif  差值/比值 GeoTIFF（Float32，nodata 为 NaN）
+     * @param outputPng  发散色带着色的 PNG（附带 .pgw/.aux.xml），为 null 时不输出
+     * @param opts       参数，为 null 时使用默认值
+     * @return 变化统计
+     */
+    public static Summary detect(String beforePath, String afterPath, String outputTif, String outputPng, Options opts) throws IOException {
+        if (opts == null) {
+            opts = new Options();
+        }
+        double center = opts.mode == Mode.RATIO ? 1.0 : 0.0;
+
+        Dataset before = null, after = null, beforeVrt = null, afterVrt = null;
+        Dataset diffDs = null, rgbaDs = null;
+        File tempDir = null;
+        File tempTif = null;
+        DirectBufferPool pool = DirectBufferPool.getInstance();
+        ByteBuffer beforeBuffer = null, afterBuffer = null, diffBuffer = null;
+        ByteBuffer[] rgba = new ByteBuffer[4];
+        ExecutorService readers = Executors.newFixedThreadPool(2);
+        try {
+            before = open(beforePath);
+            after = open(afterPath);
+
+            double[] gt = before.GetGeoTransform();
+            if (gt[2] != 0 || gt[4] != 0) {
+                throw new IOException("不支持带旋转的栅格：" + beforePath);
+            }
+            double resX = gt[1], resY = -gt[5];
+            double[] extent = commonExtent(before, after, resX, resY);
+            int width = (int) Math.round((extent[2] - extent[0]) / resX);
+            int height = (int) Math.round((extent[3] - extent[1]) / resY);
+            if (width <= 0 || height <= 0) {
+                throw new IOException("两期影像没有重叠区域");
+            }
+            String projection = before.GetProjection();
+            beforeVrt = warpToGrid(before, projection, extent, resX, resY, opts.resampling);
+            afterVrt = warpToGrid(after, projection, extent, resX, resY, opts.resampling);
+            Band beforeBand = beforeVrt.GetRasterBand(1);
+            Band afterBand = afterVrt.GetRasterBand(1);
+            double beforeNoData = noDataOf(beforeBand);
+            double afterNoData = noDataOf(afterBand);
+
+            double[] outGt = {extent[0], resX, 0, extent[3], 0, -resY};
+            String[] tiled = {"TILED=YES", "BLOCKXSIZE=" + TILE, "BLOCKYSIZE=" + TILE, "COMPRESS=DEFLATE", "BIGTIFF=IF_SAFER"};
+            diffDs = gdal.GetDriverByName("GTiff").Create(outputTif, width, height, 1, gdalconst.GDT_Float32, tiled);
+            if (diffDs == null) {
+                throw new IOException("无法创建差值文件：" + gdal.GetLastErrorMsg());
+            }
+            diffDs.SetGeoTransform(outGt);
+            diffDs.SetProjection(projection);
+            diffDs.GetRasterBand(1).SetNoDataValue(Double.NaN);
+
+            if (outputPng != null) {
+                tempDir = Files.createTempDirectory("change").toFile();
+                tempTif = new File(tempDir, "change_rgba.tif");
+                rgbaDs = gdal.GetDriverByName("GTiff").Create(tempTif.getAbsolutePath(), width, height, 4, gdalconst.GDT_Byte, tiled);
+                if (rgbaDs == null) {
+                    throw new IOException("无法创建着色临时文件：" + gdal.GetLastErrorMsg());
+                }
+                rgbaDs.SetGeoTransform(outGt);
+                rgbaDs.SetProjection(projection);
+                rgbaDs.GetRasterBand(4).SetColorInterpretation(gdalconst.GCI_AlphaBand);
+                for (int b = 0; b < 4; b++) {
+                    rgba[b] = pool.acquire(TILE * TILE);
+                }
+            }
+
+            // 两期窗口与差值输出缓冲从堆外缓冲池借用，GDAL 直接读写
+            beforeBuffer = pool.acquireFloats(TILE * TILE);
+            afterBuffer = pool.acquireFloats(TILE * TILE);
+            diffBuffer = pool.acquireFloats(TILE * TILE);
+            FloatBuffer beforeWindow = beforeBuffer.asFloatBuffer();
+            FloatBuffer afterWindow = afterBuffer.asFloatBuffer();
+            FloatBuffer diffWindow = diffBuffer.asFloatBuffer();
+            Summary summary = new Summary();
+
+            for (int ty = 0; ty < height; ty += TILE) {
+                for (int tx = 0; tx < width; tx += TILE) {
+                    int tw = Math.min(TILE, width - tx);
+                    int th = Math.min(TILE, height - ty);
+                    int n = tw * th;
+
+                    Future<Integer> beforeRead = readWindow(readers, beforeBand, tx, ty, tw, th, beforeBuffer);
+                    Future<Integer> afterRead = readWindow(readers, afterBand, tx, ty, tw, th, afterBuffer);
+                    checkRead(beforeRead, beforePath);
+                    checkRead(afterRead, afterPath);
+
+                    for (int i = 0; i < n; i++) {
+                        float a = beforeWindow.get(i);
+                        float b = afterWindow.get(i);
+                        float v;
+                        if (NoDataColorizer.isNoData(a, beforeNoData) || NoDataColorizer.isNoData(b, afterNoData)) {
+                            v = Float.NaN;
+                        } else if (opts.mode == Mode.RATIO) {
+                            v = a == 0 ? Float.NaN : b / a;
+                        } else {
+                            v = b - a;
+                        }
+                        diffWindow.put(i, v);
+                        if (!Float.isNaN(v)) {
+                            summary.add(v, center, opts.changeThreshold);
+                        }
+                        if (rgbaDs != null) {
+                            int p = ColorMapper.mapDivergingArgb(v, center, opts.colorRange);
+                            rgba[0].put(i, (byte) (p >> 16));
+                            rgba[1].put(i, (byte) (p >> 8));
+                            rgba[2].put(i, (byte) p);
+                            rgba[3].put(i, (byte) (p >>> 24));
+                        }
+                    }
+                    diffDs.GetRasterBand(1).WriteRaster_Direct(tx, ty, tw, th, tw, th, gdalconst.GDT_Float32, diffBuffer);
+                    if (rgbaDs != null) {
+                        for (int b = 0; b < 4; b++) {
+                            rgbaDs.GetRasterBand(b + 1).WriteRaster_Direct(tx, ty, tw, th, tw, th, gdalconst.GDT_Byte, rgba[b]);
+                        }
+                    }
+                }
+            }
+            diffDs.FlushCache();
+            System.out.println("变化检测完成：" + width + "x" + height + "，" + summary);
+
+            if (rgbaDs != null) {
+                rgbaDs.FlushCache();
+                Dataset pngDs = gdal.GetDriverByName("PNG").CreateCopy(outputPng, rgbaDs);
+                if (pngDs == null) {
+                    throw new IOException("PNG 输出失败：" + gdal.GetLastErrorMsg());
+                }
+                pngDs.delete();
+                new GeoReference(outGt, projection, width, height).writeSidecars(new File(outputPng));
+                System.out.println("变化图 PNG 输出成功：" + outputPng);
+            }
+            return summary;
+        } finally {
+            // 一期读取失败时另一期的 ReadRaster_Direct 可能仍在写缓冲，须等读取线程结束后再归还缓冲、关闭数据集
+            awaitReaders(readers);
+            pool.release(beforeBuffer, afterBuffer, diffBuffer);
+            pool.release(rgba);
+            if (rgbaDs != null) {
+                rgbaDs.delete();
+                gdal.GetDriverByName("GTiff").Delete(tempTif.getAbsolutePath());
+            }
+            if (tempDir != null) {
+                tempDir.delete();
+            }
+            for (Dataset ds : new Dataset[]{diffDs, beforeVrt, afterVrt, before, after}) {
+                if (ds != null) {
+                    ds.delete();
+                }
+            }
+        }
+    }
+
+    private static Dataset open(String path) throws IOException {
+        Dataset ds = gdal.Open(path, gdalconst.GA_ReadOnly);
+        if (ds == null) {
+            throw new IOException("无法打开文件：" + path);
+        }
+        return ds;
+    }
+
+    /**
+     * 两期影像范围的交集 {minX, minY, maxX, maxY}，对齐到前一期的像元网格。
+     * 后一期的范围按其自身的坐标系计算，两期坐标系不同时以前一期范围为准，由 gdal.Warp 裁剪。
+     */
+    private static double[] commonExtent(Dataset before, Dataset after, double resX, double resY) {
+        double[] a = extentOf(before);
+        double[] gt = before.GetGeoTransform();
+        if (!before.GetProjection().equals(after.GetProjection())) {
+            System.err.println("警告：两期影像坐标系不同，后一期将重投影到前一期坐标系");
+            return a;
+        }
+        double[] b = extentOf(after);
+        double minX = Math.max(a[0], b[0]), minY = Math.max(a[1], b[1]);
+        double maxX = Math.min(a[2], b[2]), maxY = Math.min(a[3], b[3]);
+        // 对齐到前一期网格，保证前一期不需要重采样
+        minX = gt[0] + Math.ceil((minX - gt[0]) / resX - 1e-9) * resX;
+        maxX = gt[0] + Math.floor((maxX - gt[0]) / resX + 1e-9) * resX;
+        maxY = gt[3] - Math.ceil((gt[3] - maxY) / resY - 1e-9) * resY;
+        minY = gt[3] - Math.floor((gt[3] - minY) / resY + 1e-9) * resY;
+        return new double[]{minX, minY, maxX, maxY};
+    }
+
+    private static double[] extentOf(Dataset ds) {
+        double[] gt = ds.GetGeoTransform();
+        double x1 = gt[0] + ds.getRasterXSize() * gt[1];
+        double y1 = gt[3] + ds.getRasterYSize() * gt[5];
+        return new double[]{Math.min(gt[0], x1), Math.min(gt[3], y1), Math.max(gt[0], x1), Math.max(gt[3], y1)};
+    }
+
+    /**
+     * 把源影像配准到目标网格，结果为内存中的 VRT，读取时才按窗口重采样
+     */
+    private static Dataset warpToGrid(Dataset src, String projection, double[] extent, double resX, double resY,
+                                      String resampling) throws IOException {
+        Vector<String> args = new Vector<>();
+        args.add("-of");
+        args.add("VRT");
+        args.add("-t_srs");
+        args.add(projection);
+        args.add("-te");
+        for (double v : extent) {
+            args.add(String.valueOf(v));
+        }
+        args.add("-tr");
+        args.add(String.valueOf(resX));
+        args.add(String.valueOf(resY));
+        args.add("-r");
+        args.add(resampling);
+        args.add("-ot");
+        args.add("Float32");
+        args.add("-dstnodata");
+        args.add("nan");
+        Dataset vrt = gdal.Warp("", new Dataset[]{src}, new WarpOptions(args));
+        if (vrt == null) {
+            throw new IOException("影像配准失败：" + gdal.GetLastErrorMsg());
+        }
+        return vrt;
+    }
+
+    private static double noDataOf(Band band) {
+        Double[] nd = new Double[1];
+        band.GetNoDataValue(nd);
+        return nd[0] != null ? nd[0] : Double.NaN;
+    }
+
+    private static Future<Integer> readWindow(ExecutorService executor, Band band, int x, int y, int w, int h, ByteBuffer buffer) {
+        return executor.submit(() -> band.ReadRaster_Direct(x, y, w, h, w, h, gdalconst.GDT_Float32, buffer));
+    }
+
+    /**
+     * 取消未开始的读取并等待正在执行的读取结束；本地读取不响应中断，等待期间的中断在返回前恢复
+     */
+    private static void awaitReaders(ExecutorService readers) {
+        readers.shutdownNow();
+        boolean interrupted = false;
+        while (!readers.isTerminated()) {
+            try {
+                readers.awaitTermination(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void checkRead(Future<Integer> read, String path) throws IOException {
+        int err;
+        try {
+            err = read.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("读取被中断：" + path, e);
+        } catch (ExecutionException e) {
+            throw new IOException("读取失败：" + path, e.getCause());
+        }
+        if (err != gdalconst.CE_None) {
+            throw new IOException("读取失败：" + path + "，" + gdal.GetLastErrorMsg());
+        }
+    }
+}
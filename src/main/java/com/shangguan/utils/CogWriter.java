@@ -0,0 +1,123 @@
+package com.shangguan.utils;
+
+import org.gdal.gdal.Dataset;
+import org.gdal.gdal.Driver;
+import org.gdal.gdal.gdal;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 输出 Cloud-Optimized GeoTIFF（COG）。
+ * <p>
+ * 基于 GDAL 的 COG 驱动：内部分块 + DEFLATE/LZW 压缩（带 predictor），自动生成金字塔，
+ * 并按 COG 规范把 IFD 和金字塔放在文件头部、tile 数据按顺序排列，前端可以直接用 HTTP Range 读取单个 tile。
+ * 金字塔计算和压缩通过 NUM_THREADS 并行进行。
+ */
+public class CogWriter {
+
+    static {
+        GdalRuntime.ensureRegistered();
+    }
+
+    public enum Compression {
+        DEFLATE, LZW
+    }
+
+    /**
+     * COG 输出参数
+     */
+    public static class CogOptions {
+        private Compression compression = Compression.DEFLATE;
+        private boolean predictor = true;
+        private int blockSize = 512;
+        private String overviewResampling = "AVERAGE";
+        private String numThreads = "ALL_CPUS";
+
+        public CogOptions compression(Compression compression) {
+            this.compression = compression;
+            return this;
+        }
+
+        public CogOptions predictor(boolean predictor) {
+            this.predictor = predictor;
+            return this;
+        }
+
+        /**
+         * 内部 tile 边长（像素），需为 16 的倍数
+         */
+        public CogOptions blockSize(int blockSize) {
+            this.blockSize = blockSize;
+            return this;
+        }
+
+        /**
+         * 金字塔重采样方式：NEAREST / AVERAGE / BILINEAR / CUBIC 等
+         */
+        public CogOptions overviewResampling(String overviewResampling) {
+            this.overviewResampling = overviewResampling;
+            return this;
+        }
+
+        /**
+         * 压缩和金字塔计算线程数，数字或 ALL_CPUS
+         */
+        public CogOptions numThreads(String numThreads) {
+            this.numThreads = numThreads;
+            return this;
+        }
+
+        String[] toCreationOptions() {
+            List<String> options = new ArrayList<>();
+            options.add("COMPRESS=" + compression.name());
+            options.add("PREDICTOR=" + (predictor ? "YES" : "NO"));
+            options.add("BLOCKSIZE=" + blockSize);
+            options.add("OVERVIEWS=AUTO");
+            options.add("OVERVIEW_RESAMPLING=" + overviewResampling);
+            options.add("NUM_THREADS=" + numThreads);
+            options.add("BIGTIFF=IF_SAFER");
+            return options.toArray(new String[0]);
+        }
+    }
+
+    /**
+     * 将任意 GDAL 可读的栅格转换为 COG
+     * @param inputPath 输入文件路径
+     * @param outputPath 输出 COG 路径（.tif）
+     * @param options 输出参数，null 表示默认值
+     * @return 是否成功
+     */
+    public static boolean writeCog(String inputPath, String outputPath, CogOptions options) {
+        Dataset inDs = gdal.Open(inputPath);
+        if (inDs == null) {
+            System.err.println("无法打开文件：" + inputPath);
+            return false;
+        }
+        try {
+            return writeCog(inDs, outputPath, options);
+        } finally {
+            inDs.delete();
+        }
+    }
+
+    /**
+     * 将已打开的数据集（例如内存中的着色结果）写出为 COG，不关闭源数据集
+     */
+    public static boolean writeCog(Dataset src, String outputPath, CogOptions options) {
+        Driver cogDriver = gdal.GetDriverByName("COG");
+        if (cogDriver == null) {
+            System.err.println("当前 GDAL 不支持 COG 驱动（需要 GDAL 3.1+）");
+            return false;
+        }
+        CogOptions opts = options != null ? options : new CogOptions();
+        Dataset outDs = cogDriver.CreateCopy(outputPath, src, opts.toCreationOptions());
+        if (outDs == null) {
+            System.err.println("COG 输出失败：" + outputPath + "，" + gdal.GetLastErrorMsg());
+            return false;
+        }
+        outDs.delete();
+        System.out.println("COG 输出成功：" + outputPath);
+        return true;
+    }
+}
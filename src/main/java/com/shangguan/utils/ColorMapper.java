@@ -3,8 +3,33 @@ package com.shangguan.utils;
 import java.awt.*;
 
 public class ColorMapper {
+
+    /** 无数据像素：全透明 */
+    public static final int TRANSPARENT = 0;
+
+    /** 色带分段位置（占 [min, max] 的比例），分类出图时使用同样的断点 */
+    public static final double[] BREAK_RATIOS = {0.25, 0.5, 0.75};
+
+    /**
+     * 与色带一致的分类断点值
+     */
+    public static double[] breaks(double min, double max) {
+        double[] breaks = new double[BREAK_RATIOS.length];
+        for (int i = 0; i < breaks.length; i++) {
+            breaks[i] = min + (max - min) * BREAK_RATIOS[i];
+        }
+        return breaks;
+    }
+
     public static Color map(double value, double min, double max) {
-        if (Double.isNaN(value)) return Color.BLACK;
+        return new Color(mapArgb(value, min, max), true);
+    }
+
+    /**
+     * 与 {@link #map} 相同的色带，直接返回 ARGB 整数，逐像素调用时不创建 Color 对象；NaN 返回透明
+     */
+    public static int mapArgb(double value, double min, double max) {
+        if (Double.isNaN(value)) return TRANSPARENT;
 
         double ratio = (value - min) / (max - min);
         ratio = Math.max(0.0, Math.min(1.0, ratio)); // clamp to [0,1]
@@ -20,10 +45,27 @@ public class ColorMapper {
         }
     }
 
-    private static Color interpolate(Color c1, Color c2, double ratio) {
+    /**
+     * 发散色带，用于变化图：低于 center 由红渐变到白，高于 center 由白渐变到绿，
+     * 偏离 center 达到 halfRange 及以上时取端点颜色；NaN 返回透明
+     */
+    public static int mapDivergingArgb(double value, double center, double halfRange) {
+        if (Double.isNaN(value)) return TRANSPARENT;
+
+        double ratio = (value - center) / halfRange;
+        ratio = Math.max(-1.0, Math.min(1.0, ratio)); // clamp to [-1,1]
+
+        if (ratio < 0) {
+            return interpolate(Color.WHITE, Color.RED, -ratio);
+        } else {
+            return interpolate(Color.WHITE, Color.GREEN, ratio);
+        }
+    }
+
+    private static int interpolate(Color c1, Color c2, double ratio) {
         int r = (int) (c1.getRed() * (1 - ratio) + c2.getRed() * ratio);
         int g = (int) (c1.getGreen() * (1 - ratio) + c2.getGreen() * ratio);
         int b = (int) (c1.getBlue() * (1 - ratio) + c2.getBlue() * ratio);
-        return new Color(r, g, b);
+        return 0xFF000000 | (r << 16) | (g << 8) | b;
     }
 }
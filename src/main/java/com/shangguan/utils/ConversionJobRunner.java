@@ -0,0 +1,98 @@
+package com.shangguan.utils;
+
+import java.io.File;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * “下载 → 转换 → 上传”类任务的执行器。
+ * <p>
+ * 任务大部分时间在等网络和磁盘：JDK 21+ 上每个任务跑在一个虚拟线程里，可同时进行的任务数不再受线程数限制；
+ * 旧版本 JVM 上退化为固定大小的平台线程池（见 {@link JobThreads}，多版本 JAR）。
+ * 着色、编码等 CPU 密集阶段用 {@link #cpuBound} 包裹，由独立的信号量限制并发数不超过 CPU 核数；
+ * GDAL 等 JNI 调用执行期间虚拟线程无法让出载体线程，也应放在 cpuBound 中。
+ */
+public class ConversionJobRunner implements AutoCloseable {
+
+    /**
+     * 上传转换结果，例如写入 MinIO
+     */
+    public interface Uploader {
+        void upload(File file) throws Exception;
+    }
+
+    private final ExecutorService executor;
+    private final Semaphore cpuPermits;
+
+    public ConversionJobRunner() {
+        this(Runtime.getRuntime().availableProcessors() * 4, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param platformThreads 旧版本 JVM 上的平台线程数
+     * @param cpuConcurrency  CPU 密集阶段的最大并发数
+     */
+    public ConversionJobRunner(int platformThreads, int cpuConcurrency) {
+        this.executor = JobThreads.newJobExecutor("conversion-job-", Math.max(1, platformThreads));
+        this.cpuPermits = new Semaphore(Math.max(1, cpuConcurrency), true);
+        System.out.println("转换任务执行器：" + (JobThreads.isVirtual() ? "虚拟线程" : "平台线程池 " + platformThreads));
+    }
+
+    /**
+     * 提交一个任务
+     */
+    public <T> Future<T> submit(Callable<T> job) {
+        return executor.submit(job);
+    }
+
+    /**
+     * 在 CPU 信号量的限制下执行一个阶段，阻塞直到拿到许可
+     */
+    public <T> T cpuBound(Callable<T> stage) throws Exception {
+        cpuPermits.acquire();
+        try {
+            return stage.call();
+        } finally {
+            cpuPermits.release();
+        }
+    }
+
+    /**
+     * 提交一个“下载远程 TIF → 着色转换 → 上传”任务，结束后删除临时 TIF
+     *
+     * @param tifUrl     远程 TIF 地址
+     * @param outputPath 输出文件路径
+     * @param format     输出格式
+     * @param uploader   上传逻辑，为 null 时只保留本地文件
+     * @return 输出文件路径
+     */
+    public Future<String> submitDownloadAndConvert(String tifUrl, String outputPath,
+                                                   TifToPngConverter.OutputFormat format, Uploader uploader) {
+        return submit(() -> {
+            String localTif = TifToPngConverter.downloadTif(tifUrl);
+            try {
+                cpuBound(() -> {
+                    TifToPngConverter.convertSingleFile(localTif, outputPath, format);
+                    return null;
+                });
+                if (uploader != null) {
+                    uploader.upload(new File(outputPath));
+                }
+                return outputPath;
+            } finally {
+                new File(localTif).delete();
+            }
+        });
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(10, TimeUnit.MINUTES)) {
+            executor.shutdownNow();
+        }
+    }
+}
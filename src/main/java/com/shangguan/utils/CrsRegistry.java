@@ -0,0 +1,116 @@
+package com.shangguan.utils;
+
+import org.geotools.referencing.CRS;
+import org.geotools.util.factory.Hints;
+import org.opengis.referencing.FactoryException;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 常用坐标系的快速解析。
+ * <p>
+ * CRS.decode 第一次调用会初始化整套 EPSG 工厂（扫描插件、加载 EPSG 数据库），首个请求因此多出数秒延迟。
+ * 项目里实际只用到少数几个编码，这里内置它们的 WKT（轴顺序与 CRS.decode 默认结果一致），
+ * 命中时直接解析 WKT；未命中时才回退到 CRS.decode，完整的 EPSG 工厂也只在那时加载。解析结果缓存复用。
+ * 设置了经度在前的全局 Hint（FORCE_LONGITUDE_FIRST_AXIS_ORDER）时不使用内置表，保证与 CRS.decode 行为一致。
+ */
+public final class CrsRegistry {
+
+    private static final String WGS84_GEOGCS = "GEOGCS[\"WGS 84\","
+            + "DATUM[\"World Geodetic System 1984\",SPHEROID[\"WGS 84\",6378137.0,298.257223563,AUTHORITY[\"EPSG\",\"7030\"]],AUTHORITY[\"EPSG\",\"6326\"]],"
+            + "PRIMEM[\"Greenwich\",0.0,AUTHORITY[\"EPSG\",\"8901\"]],UNIT[\"degree\",0.017453292519943295],"
+            + "AXIS[\"Geodetic latitude\",NORTH],AXIS[\"Geodetic longitude\",EAST],AUTHORITY[\"EPSG\",\"4326\"]]";
+
+    private static final Map<String, String> EMBEDDED = new HashMap<>();
+
+    static {
+        EMBEDDED.put("EPSG:4326", WGS84_GEOGCS);
+        EMBEDDED.put("EPSG:4490", "GEOGCS[\"China Geodetic Coordinate System 2000\","
+                + "DATUM[\"China 2000\",SPHEROID[\"CGCS2000\",6378137.0,298.257222101,AUTHORITY[\"EPSG\",\"1024\"]],AUTHORITY[\"EPSG\",\"1043\"]],"
+                + "PRIMEM[\"Greenwich\",0.0,AUTHORITY[\"EPSG\",\"8901\"]],UNIT[\"degree\",0.017453292519943295],"
+                + "AXIS[\"Geodetic latitude\",NORTH],AXIS[\"Geodetic longitude\",EAST],AUTHORITY[\"EPSG\",\"4490\"]]");
+        EMBEDDED.put("EPSG:3857", "PROJCS[\"WGS 84 / Pseudo-Mercator\"," + WGS84_GEOGCS + ","
+                + "PROJECTION[\"Popular Visualisation Pseudo Mercator\",AUTHORITY[\"EPSG\",\"1024\"]],"
+                + "PARAMETER[\"semi_minor\",6378137.0],PARAMETER[\"latitude_of_origin\",0.0],PARAMETER[\"central_meridian\",0.0],"
+                + "PARAMETER[\"scale_factor\",1.0],PARAMETER[\"false_easting\",0.0],PARAMETER[\"false_northing\",0.0],"
+                + "UNIT[\"m\",1.0],AXIS[\"Easting\",EAST],AXIS[\"Northing\",NORTH],AUTHORITY[\"EPSG\",\"3857\"]]");
+        EMBEDDED.put("EPSG:32631", utmNorth(31));
+        EMBEDDED.put("EPSG:32648", utmNorth(48));
+        EMBEDDED.put("EPSG:32649", utmNorth(49));
+    }
+
+    private static final Map<String, CoordinateReferenceSystem> CACHE = new ConcurrentHashMap<>();
+
+    private CrsRegistry() {
+    }
+
+    /**
+     * 按编码取坐标系，如 "EPSG:4326"
+     *
+     * @throws FactoryException 内置表未命中且 CRS.decode 也无法解析时
+     */
+    public static CoordinateReferenceSystem decode(String code) throws FactoryException {
+        String key = code.trim().toUpperCase(Locale.ROOT);
+        CoordinateReferenceSystem crs = CACHE.get(key);
+        if (crs != null) {
+            return crs;
+        }
+        String wkt = longitudeFirst() ? null : EMBEDDED.get(key);
+        if (wkt != null) {
+            try {
+                crs = CRS.parseWKT(wkt);
+            } catch (FactoryException e) {
+                System.err.println("内置坐标系解析失败，改用 EPSG 工厂：" + key + "，" + e.getMessage());
+            }
+        }
+        if (crs == null) {
+            crs = CRS.decode(key);
+        }
+        CACHE.put(key, crs);
+        return crs;
+    }
+
+    /**
+     * 预先解析全部内置坐标系
+     */
+    public static void preload() {
+        for (String code : EMBEDDED.keySet()) {
+            try {
+                decode(code);
+            } catch (FactoryException e) {
+                System.err.println("坐标系预加载失败：" + code + "，" + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 初始化完整的 EPSG 工厂，供后台预热使用
+     */
+    public static void loadEpsgFactory() {
+        try {
+            CRS.decode("EPSG:4326");
+        } catch (FactoryException e) {
+            System.err.println("EPSG 工厂初始化失败：" + e.getMessage());
+        }
+    }
+
+    public static boolean isEmbedded(String code) {
+        return EMBEDDED.containsKey(code.trim().toUpperCase(Locale.ROOT));
+    }
+
+    private static boolean longitudeFirst() {
+        return Boolean.TRUE.equals(Hints.getSystemDefault(Hints.FORCE_LONGITUDE_FIRST_AXIS_ORDER));
+    }
+
+    private static String utmNorth(int zone) {
+        return "PROJCS[\"WGS 84 / UTM zone " + zone + "N\"," + WGS84_GEOGCS + ","
+                + "PROJECTION[\"Transverse_Mercator\",AUTHORITY[\"EPSG\",\"9807\"]],"
+                + "PARAMETER[\"central_meridian\"," + (zone * 6 - 183) + ".0],PARAMETER[\"latitude_of_origin\",0.0],"
+                + "PARAMETER[\"scale_factor\",0.9996],PARAMETER[\"false_easting\",500000.0],PARAMETER[\"false_northing\",0.0],"
+                + "UNIT[\"m\",1.0],AXIS[\"Easting\",EAST],AXIS[\"Northing\",NORTH],AUTHORITY[\"EPSG\",\"" + (32600 + zone) + "\"]]";
+    }
+}
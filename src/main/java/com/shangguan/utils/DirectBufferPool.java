@@ -0,0 +1,229 @@
+package com.shangguan.utils;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 堆外缓冲池：按 2 的幂分级缓存直接内存 ByteBuffer，供分块读写窗口、GDAL ReadRaster_Direct/WriteRaster_Direct
+ * 和编码暂存区在多个任务之间复用。
+ * <p>
+ * 之前每个文件都在堆上分配 float[3][w*h]、byte[4][w*h] 这类短命大数组，并发时直接进入老年代引发 Full GC；
+ * 改为池化的直接内存后堆占用保持平稳。池中空闲缓冲的总量有上限，超出上限或不走池的缓冲归还时立即释放直接内存，
+ * 不等 GC 回收，避免直接内存触顶时 JDK 调用 System.gc() 引发 Full GC。
+ * 缓冲按本机字节序（与 GDAL 的内存布局一致），借出时 position=0、limit=请求字节数。
+ * <p>
+ * 池按对象身份登记借出中的缓冲，只接受归还本池借出且尚未归还的缓冲，重复归还或归还外来缓冲会抛出异常，
+ * 因此同一块内存不会两次进入空闲队列，也只有本池分配的缓冲会被显式释放。
+ * 归还即交出所有权：调用方须在归还前结束对缓冲及其视图（如 asFloatBuffer）的所有访问，
+ * 包括仍在写入它的本地读取，否则显式释放后的访问会导致 JVM 崩溃。
+ */
+public class DirectBufferPool {
+
+    /** 最小分级 64KB，更小的请求也按 64KB 分配 */
+    private static final int MIN_CLASS_SHIFT = 16;
+    /** 最大分级 256MB，更大的请求不走池 */
+    private static final int MAX_CLASS_SHIFT = 28;
+    /** 默认空闲缓冲总量上限：256MB */
+    private static final long DEFAULT_MAX_IDLE_BYTES = 256L * 1024 * 1024;
+
+    private static final DirectBufferPool INSTANCE = new DirectBufferPool(DEFAULT_MAX_IDLE_BYTES);
+
+    @SuppressWarnings("unchecked")
+    private final ConcurrentLinkedDeque<ByteBuffer>[] classes = new ConcurrentLinkedDeque[MAX_CLASS_SHIFT - MIN_CLASS_SHIFT + 1];
+    /** 借出中的缓冲，按对象身份比较（ByteBuffer 的 equals 比较内容） */
+    private final Set<ByteBuffer> leased = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+    private final AtomicLong idleBytes = new AtomicLong();
+    private final AtomicLong allocations = new AtomicLong();
+    private final AtomicLong reuses = new AtomicLong();
+    private final AtomicLong freed = new AtomicLong();
+    private volatile long maxIdleBytes;
+
+    public DirectBufferPool(long maxIdleBytes) {
+        this.maxIdleBytes = maxIdleBytes;
+        for (int i = 0; i < classes.length; i++) {
+            classes[i] = new ConcurrentLinkedDeque<>();
+        }
+    }
+
+    public static DirectBufferPool getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 调整空闲缓冲总量上限，已超出的部分在下次归还时释放
+     */
+    public void setMaxIdleBytes(long maxIdleBytes) {
+        this.maxIdleBytes = maxIdleBytes;
+    }
+
+    /**
+     * 借出至少 bytes 字节的直接缓冲
+     */
+    public ByteBuffer acquire(int bytes) {
+        int cls = classOf(bytes);
+        if (cls < 0) {
+            allocations.incrementAndGet();
+            ByteBuffer buffer = ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+            leased.add(buffer);
+            return buffer;
+        }
+        ByteBuffer buffer = classes[cls].pollFirst();
+        if (buffer != null) {
+            idleBytes.addAndGet(-buffer.capacity());
+            reuses.incrementAndGet();
+        } else {
+            allocations.incrementAndGet();
+            buffer = ByteBuffer.allocateDirect(1 << (cls + MIN_CLASS_SHIFT)).order(ByteOrder.nativeOrder());
+        }
+        buffer.clear();
+        buffer.limit(bytes);
+        leased.add(buffer);
+        return buffer;
+    }
+
+    /**
+     * 借出可容纳 count 个 float 的直接缓冲
+     */
+    public ByteBuffer acquireFloats(int count) {
+        return acquire(count * Float.BYTES);
+    }
+
+    /**
+     * 归还缓冲，归还后调用方不得再使用它及其视图；null 会被忽略。
+     * 不属于任何分级（超大请求）或超出空闲上限的缓冲立即释放其直接内存。
+     *
+     * @throws IllegalArgumentException 缓冲不是本池借出的，或已经归还过
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer == null) {
+            return;
+        }
+        if (!leased.remove(buffer)) {
+            throw new IllegalArgumentException("缓冲不是从本池借出的或已归还");
+        }
+        int capacity = buffer.capacity();
+        int shift = Integer.numberOfTrailingZeros(capacity);
+        if (Integer.bitCount(capacity) != 1 || shift < MIN_CLASS_SHIFT || shift > MAX_CLASS_SHIFT) {
+            free(buffer);
+            return;
+        }
+        if (idleBytes.addAndGet(capacity) > maxIdleBytes) {
+            idleBytes.addAndGet(-capacity);
+            free(buffer);
+            return;
+        }
+        classes[shift - MIN_CLASS_SHIFT].offerFirst(buffer);
+    }
+
+    /**
+     * 归还多个缓冲
+     */
+    public void release(ByteBuffer... buffers) {
+        for (ByteBuffer buffer : buffers) {
+            release(buffer);
+        }
+    }
+
+    /**
+     * 释放所有空闲缓冲
+     */
+    public void clear() {
+        for (ConcurrentLinkedDeque<ByteBuffer> deque : classes) {
+            ByteBuffer buffer;
+            while ((buffer = deque.pollFirst()) != null) {
+                idleBytes.addAndGet(-buffer.capacity());
+                free(buffer);
+            }
+        }
+    }
+
+    public int getLeasedCount() {
+        return leased.size();
+    }
+
+    public long getIdleBytes() {
+        return idleBytes.get();
+    }
+
+    @Override
+    public String toString() {
+        return "DirectBufferPool idle=" + (idleBytes.get() >> 20) + "MB/" + (maxIdleBytes >> 20) + "MB"
+                + ", leased=" + leased.size() + ", allocations=" + allocations.get() + ", reuses=" + reuses.get() + ", freed=" + freed.get();
+    }
+
+    /**
+     * 立即释放直接缓冲的内存，只用于本池分配且已收回的缓冲；清理器不可用时交给 GC
+     */
+    private void free(ByteBuffer buffer) {
+        if (Cleaners.clean(buffer)) {
+            freed.incrementAndGet();
+        }
+    }
+
+    private static int classOf(int bytes) {
+        int shift = bytes <= (1 << MIN_CLASS_SHIFT) ? MIN_CLASS_SHIFT : 32 - Integer.numberOfLeadingZeros(bytes - 1);
+        return shift > MAX_CLASS_SHIFT ? -1 : shift - MIN_CLASS_SHIFT;
+    }
+
+    /**
+     * 通过反射调用 JDK 的清理器：Java 9+ 使用 Unsafe.invokeCleaner，Java 8 使用 DirectBuffer.cleaner().clean()
+     */
+    private static final class Cleaners {
+        private static final Object UNSAFE;
+        private static final Method INVOKE_CLEANER;
+        private static final Method CLEANER;
+        private static final Method CLEAN;
+
+        static {
+            Object unsafe = null;
+            Method invokeCleaner = null;
+            Method cleaner = null;
+            Method clean = null;
+            try {
+                Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                Field field = unsafeClass.getDeclaredField("theUnsafe");
+                field.setAccessible(true);
+                unsafe = field.get(null);
+                invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                unsafe = null;
+                try {
+                    cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+                    clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+                } catch (ReflectiveOperationException | RuntimeException ex) {
+                    System.err.println("无法获取直接内存清理器，缓冲将由 GC 回收：" + ex);
+                }
+            }
+            UNSAFE = unsafe;
+            INVOKE_CLEANER = invokeCleaner;
+            CLEANER = cleaner;
+            CLEAN = clean;
+        }
+
+        static boolean clean(ByteBuffer buffer) {
+            try {
+                if (INVOKE_CLEANER != null) {
+                    INVOKE_CLEANER.invoke(UNSAFE, buffer);
+                    return true;
+                }
+                if (CLEANER != null) {
+                    Object cleaner = CLEANER.invoke(buffer);
+                    if (cleaner != null) {
+                        CLEAN.invoke(cleaner);
+                        return true;
+                    }
+                }
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                // 视图缓冲等无法单独释放的情况
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.shangguan.utils;
+
+import org.gdal.gdal.Driver;
+import org.gdal.gdal.gdal;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * GDAL 驱动的一次性注册。
+ * <p>
+ * 之前每个工具类的静态块都调用一次 gdal.AllRegister()；这里只在第一次用到 GDAL 时注册一次。
+ * Java 绑定没有导出单个驱动的注册函数（GDALRegister_GTiff 等），只能 AllRegister 后再注销，
+ * 所以内置驱动仍然全部会被构造一遍，注销本身不省注册时间。实际的节省来自两点：
+ * 默认关闭插件目录扫描（GDAL_DRIVER_PATH=disable），以及注销白名单以外的驱动后，
+ * gdal.Open 识别文件格式时逐个探测的驱动变少。注册和注销的耗时分别记录，可用 {@link StartupBenchmark} 对比。
+ * 白名单可通过系统属性 gdal.drivers（逗号分隔的驱动短名）覆盖，默认只保留本项目用到的驱动。
+ */
+public final class GdalRuntime {
+
+    /** 默认保留的驱动：栅格读写、内存数据集、PNG/JPEG/COG 输出、VRT 配准，以及 OGR 内存图层和分级矢量化输出用的 Shapefile */
+    private static final String DEFAULT_DRIVERS = "GTiff,MEM,PNG,JPEG,COG,VRT,Memory,ESRI Shapefile";
+
+    private static volatile boolean registered;
+    private static long registerMillis;
+    private static long pruneMillis;
+
+    private GdalRuntime() {
+    }
+
+    /**
+     * 确保所需驱动已注册，可重复调用
+     */
+    public static void ensureRegistered() {
+        if (registered) {
+            return;
+        }
+        synchronized (GdalRuntime.class) {
+            if (registered) {
+                return;
+            }
+            long start = System.currentTimeMillis();
+            if (gdal.GetConfigOption("GDAL_DRIVER_PATH") == null) {
+                gdal.SetConfigOption("GDAL_DRIVER_PATH", "disable");
+            }
+            gdal.AllRegister();
+            long allRegistered = System.currentTimeMillis();
+
+            Set<String> allowed = new HashSet<>(Arrays.asList(System.getProperty("gdal.drivers", DEFAULT_DRIVERS).split("\\s*,\\s*")));
+            int kept = 0;
+            for (int i = gdal.GetDriverCount() - 1; i >= 0; i--) {
+                Driver driver = gdal.GetDriver(i);
+                if (allowed.contains(driver.getShortName())) {
+                    kept++;
+                } else {
+                    driver.Deregister();
+                }
+            }
+            registerMillis = allRegistered - start;
+            pruneMillis = System.currentTimeMillis() - allRegistered;
+            registered = true;
+            System.out.println("GDAL 驱动注册完成：保留 " + kept + " 个，注册 " + registerMillis + " ms，注销 " + pruneMillis + " ms");
+        }
+    }
+
+    public static boolean isRegistered() {
+        return registered;
+    }
+
+    /**
+     * gdal.AllRegister 耗时（毫秒），未注册时为 0
+     */
+    public static long getRegisterMillis() {
+        return registerMillis;
+    }
+
+    /**
+     * 注销白名单以外驱动的耗时（毫秒），未注册时为 0
+     */
+    public static long getPruneMillis() {
+        return pruneMillis;
+    }
+}
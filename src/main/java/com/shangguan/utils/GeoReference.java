@@ -0,0 +1,254 @@
+package com.shangguan.utils;
+
+import org.gdal.gdal.Dataset;
+import org.geotools.coverage.grid.GridCoverage2D;
+import org.geotools.coverage.grid.GridEnvelope2D;
+import org.geotools.coverage.grid.GridGeometry2D;
+import org.geotools.geometry.Envelope2D;
+import org.opengis.metadata.spatial.PixelOrientation;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.opengis.referencing.operation.MathTransform2D;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.geom.AffineTransform;
+import java.awt.image.RenderedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 栅格的地理参考信息：仿射变换（GDAL GeoTransform 顺序）、CRS WKT 与像素尺寸。
+ * <p>
+ * 输出 PNG 时用它写 .pgw 世界文件、.aux.xml，或把范围写入 PNG 文本块，
+ * 客户端无需再打开原始 TIF 就能定位图片。
+ */
+public class GeoReference {
+
+    public static final String KEY_BOUNDS = "georef:bounds";
+    public static final String KEY_CRS = "georef:crs";
+    public static final String KEY_GEOTRANSFORM = "georef:geotransform";
+
+    // originX, pixelWidth, rotationX, originY, rotationY, pixelHeight
+    private final double[] geoTransform;
+    private final String crsWkt;
+    private final int width;
+    private final int height;
+
+    public GeoReference(double[] geoTransform, String crsWkt, int width, int height) {
+        this.geoTransform = geoTransform.clone();
+        this.crsWkt = crsWkt;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * 从 GDAL 数据集读取地理参考
+     */
+    public static GeoReference fromDataset(Dataset ds) {
+        return new GeoReference(ds.GetGeoTransform(), ds.GetProjection(), ds.getRasterXSize(), ds.getRasterYSize());
+    }
+
+    /**
+     * 从 GeoTools 覆盖数据读取地理参考
+     */
+    public static GeoReference fromCoverage(GridCoverage2D coverage) {
+        GridGeometry2D gridGeometry = coverage.getGridGeometry();
+        GridEnvelope2D gridRange = gridGeometry.getGridRange2D();
+        int width = gridRange.width;
+        int height = gridRange.height;
+
+        double[] gt;
+        MathTransform2D gridToCrs = gridGeometry.getGridToCRS2D(PixelOrientation.UPPER_LEFT);
+        if (gridToCrs instanceof AffineTransform) {
+            AffineTransform at = (AffineTransform) gridToCrs;
+            gt = new double[]{at.getTranslateX(), at.getScaleX(), at.getShearX(),
+                    at.getTranslateY(), at.getShearY(), at.getScaleY()};
+        } else {
+            // 非仿射时退化为按范围等分的北向上网格
+            Envelope2D env = coverage.getEnvelope2D();
+            gt = new double[]{env.getMinX(), env.getWidth() / width, 0,
+                    env.getMaxY(), 0, -env.getHeight() / height};
+        }
+
+        CoordinateReferenceSystem crs = coverage.getCoordinateReferenceSystem();
+        return new GeoReference(gt, crs != null ? crs.toWKT() : "", width, height);
+    }
+
+    /**
+     * 按缩放比例换算成缩略图的地理参考（范围不变，像素变大）
+     */
+    public GeoReference scaledTo(int newWidth, int newHeight) {
+        double sx = (double) width / newWidth;
+        double sy = (double) height / newHeight;
+        double[] gt = {geoTransform[0], geoTransform[1] * sx, geoTransform[2] * sy,
+                geoTransform[3], geoTransform[4] * sx, geoTransform[5] * sy};
+        return new GeoReference(gt, crsWkt, newWidth, newHeight);
+    }
+
+    /**
+     * 按整数倍缩小后的地理参考：原点不变，像元尺寸乘以 factor。
+     * 宽高不能被 factor 整除时缩略图会截掉末尾不足一个大像元的部分，不能用 {@link #scaledTo} 按范围等分
+     */
+    public GeoReference scaledBy(int factor, int newWidth, int newHeight) {
+        double[] gt = {geoTransform[0], geoTransform[1] * factor, geoTransform[2] * factor,
+                geoTransform[3], geoTransform[4] * factor, geoTransform[5] * factor};
+        return new GeoReference(gt, crsWkt, newWidth, newHeight);
+    }
+
+    public double[] getGeoTransform() {
+        return geoTransform.clone();
+    }
+
+    public String getCrsWkt() {
+        return crsWkt;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * 外包范围 [minX, minY, maxX, maxY]
+     */
+    public double[] getBounds() {
+        double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+        int[][] corners = {{0, 0}, {width, 0}, {0, height}, {width, height}};
+        for (int[] c : corners) {
+            double x = geoTransform[0] + c[0] * geoTransform[1] + c[1] * geoTransform[2];
+            double y = geoTransform[3] + c[0] * geoTransform[4] + c[1] * geoTransform[5];
+            minX = Math.min(minX, x);
+            minY = Math.min(minY, y);
+            maxX = Math.max(maxX, x);
+            maxY = Math.max(maxY, y);
+        }
+        return new double[]{minX, minY, maxX, maxY};
+    }
+
+    /**
+     * 写入 PNG 文本块用的键值
+     */
+    public Map<String, String> toTextChunks() {
+        double[] b = getBounds();
+        Map<String, String> chunks = new LinkedHashMap<>();
+        chunks.put(KEY_BOUNDS, b[0] + "," + b[1] + "," + b[2] + "," + b[3]);
+        chunks.put(KEY_GEOTRANSFORM, joinGeoTransform(","));
+        if (crsWkt != null && !crsWkt.isEmpty()) {
+            chunks.put(KEY_CRS, crsWkt);
+        }
+        return chunks;
+    }
+
+    /**
+     * 为图片写入世界文件（.pgw/.jgw/.tfw）和 .aux.xml
+     * @param imageFile 输出的图片文件
+     */
+    public void writeSidecars(File imageFile) throws IOException {
+        writeWorldFile(worldFileFor(imageFile));
+        writeAuxXml(new File(imageFile.getPath() + ".aux.xml"));
+    }
+
+    /**
+     * 写世界文件。世界文件的平移量指向左上像素的中心，不是左上角。
+     */
+    public void writeWorldFile(File worldFile) throws IOException {
+        double centerX = geoTransform[0] + geoTransform[1] / 2 + geoTransform[2] / 2;
+        double centerY = geoTransform[3] + geoTransform[4] / 2 + geoTransform[5] / 2;
+        try (Writer w = new OutputStreamWriter(new FileOutputStream(worldFile), StandardCharsets.US_ASCII)) {
+            w.write(geoTransform[1] + "\n");
+            w.write(geoTransform[4] + "\n");
+            w.write(geoTransform[2] + "\n");
+            w.write(geoTransform[5] + "\n");
+            w.write(centerX + "\n");
+            w.write(centerY + "\n");
+        }
+    }
+
+    /**
+     * 写 GDAL PAM 格式的 .aux.xml，包含 SRS 和 GeoTransform
+     */
+    public void writeAuxXml(File auxFile) throws IOException {
+        try (Writer w = new OutputStreamWriter(new FileOutputStream(auxFile), StandardCharsets.UTF_8)) {
+            w.write("<PAMDataset>\n");
+            if (crsWkt != null && !crsWkt.isEmpty()) {
+                w.write("  <SRS>" + escapeXml(crsWkt) + "</SRS>\n");
+            }
+            w.write("  <GeoTransform>" + joinGeoTransform(", ") + "</GeoTransform>\n");
+            w.write("</PAMDataset>\n");
+        }
+    }
+
+    /**
+     * 把图片编码为 PNG，并把地理范围、CRS 写入 tEXt 文本块
+     */
+    public void writePngWithMetadata(RenderedImage image, OutputStream out) throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("png");
+        if (!writers.hasNext()) {
+            throw new IllegalStateException("No writers found for format: png");
+        }
+        ImageWriter writer = writers.next();
+        try (ImageOutputStream ios = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(ios);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            IIOMetadata metadata = writer.getDefaultImageMetadata(ImageTypeSpecifier.createFromRenderedImage(image), param);
+
+            IIOMetadataNode text = new IIOMetadataNode("tEXt");
+            for (Map.Entry<String, String> chunk : toTextChunks().entrySet()) {
+                IIOMetadataNode entry = new IIOMetadataNode("tEXtEntry");
+                entry.setAttribute("keyword", chunk.getKey());
+                entry.setAttribute("value", chunk.getValue());
+                text.appendChild(entry);
+            }
+            IIOMetadataNode root = new IIOMetadataNode("javax_imageio_png_1.0");
+            root.appendChild(text);
+            metadata.mergeTree("javax_imageio_png_1.0", root);
+
+            writer.write(null, new IIOImage(image, null, metadata), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    /**
+     * 根据图片扩展名得到世界文件名：png → pgw，jpg → jgw，tif → tfw
+     */
+    public static File worldFileFor(File imageFile) {
+        String name = imageFile.getName();
+        int i = name.lastIndexOf('.');
+        String base = i > 0 ? name.substring(0, i) : name;
+        String ext = i > 0 ? name.substring(i + 1) : "";
+        String worldExt = ext.length() >= 2 ? "" + ext.charAt(0) + ext.charAt(ext.length() - 1) + "w" : "wld";
+        return new File(imageFile.getParentFile(), base + "." + worldExt.toLowerCase());
+    }
+
+    private String joinGeoTransform(String separator) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < geoTransform.length; i++) {
+            if (i > 0) sb.append(separator);
+            sb.append(geoTransform[i]);
+        }
+        return sb.toString();
+    }
+
+    private static String escapeXml(String s) {
+        return s.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+}
@@ -1,38 +1,85 @@
 package com.shangguan.utils;
 
+import org.geotools.coverage.NoDataContainer;
 import org.geotools.coverage.grid.GridCoverage2D;
-import org.geotools.coverage.grid.io.AbstractGridFormat;
-import org.geotools.coverage.grid.io.GridCoverage2DReader;
-import org.geotools.gce.geotiff.GeoTiffFormat;
+import org.geotools.coverage.util.CoverageUtilities;
 
-import javax.imageio.ImageIO;
 import java.awt.*;
-import java.awt.image.BufferedImage;
 import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
 
 public class GeoTiffColorRenderer {
 
+    /**
+     * 着色输出 PNG，同时写 .pgw 世界文件和 .aux.xml，并把范围/CRS 写入 PNG 文本块
+     */
     public static void convertTiffToColorPng(File tifFile, File outputPngFile, double minVal, double maxVal) throws Exception {
-        AbstractGridFormat format = new GeoTiffFormat();
-        GridCoverage2DReader reader = format.getReader(tifFile);
-        GridCoverage2D coverage = reader.read(null);
+        RenderResult result = renderToColorPng(tifFile, minVal, maxVal);
+        try (OutputStream out = new FileOutputStream(outputPngFile)) {
+            out.write(result.getImageBytes());
+        }
+        result.getGeoReference().writeSidecars(outputPngFile);
+        System.out.println("✅ 生成成功：" + outputPngFile.getAbsolutePath());
+    }
 
-        Raster raster = coverage.getRenderedImage().getData();
-        int width = raster.getWidth();
-        int height = raster.getHeight();
+    /**
+     * 一次读取完成着色、PNG 编码、地理参考和统计。
+     * 着色由 {@link RenderPipeline} 的延迟算子链完成，PNG 编码器按 tile 拉取，不生成整幅的着色图像；
+     * 统计按源图像的 tile 逐块累计，只读不复制。nodata 像素输出透明。
+     * @return 图片字节 + 范围 + CRS + 统计
+     */
+    public static RenderResult renderToColorPng(File tifFile, double minVal, double maxVal) throws Exception {
+        return RasterAccess.getInstance().withCoverage(tifFile, coverage -> {
+            GeoReference geoReference = GeoReference.fromCoverage(coverage);
+            double noData = noDataOf(coverage);
+            RenderedImage image = coverage.getRenderedImage();
+            int width = image.getWidth();
+            int height = image.getHeight();
+            Rectangle imageBounds = new Rectangle(image.getMinX(), image.getMinY(), width, height);
 
-        BufferedImage colorImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            float[] values = new float[image.getTileWidth() * image.getTileHeight()];
+            long validCount = 0;
+            double sum = 0;
+            double min = Double.MAX_VALUE, max = -Double.MAX_VALUE;
+            for (int ty = image.getMinTileY(); ty < image.getMinTileY() + image.getNumYTiles(); ty++) {
+                for (int tx = image.getMinTileX(); tx < image.getMinTileX() + image.getNumXTiles(); tx++) {
+                    Raster tile = image.getTile(tx, ty);
+                    Rectangle r = tile.getBounds().intersection(imageBounds);
+                    if (r.isEmpty()) continue;
+                    int n = r.width * r.height;
+                    values = tile.getSamples(r.x, r.y, r.width, r.height, 0, values);
 
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                double value = raster.getSampleDouble(x, y, 0);
-                Color color = ColorMapper.map(value, minVal, maxVal);
-                colorImage.setRGB(x, y, color.getRGB());
+                    for (int i = 0; i < n; i++) {
+                        float v = values[i];
+                        if (!NoDataColorizer.isNoData(v, noData)) {
+                            validCount++;
+                            sum += v;
+                            if (v < min) min = v;
+                            if (v > max) max = v;
+                        }
+                    }
+                }
             }
-        }
 
-        ImageIO.write(colorImage, "png", outputPngFile);
-        System.out.println("✅ 生成成功：" + outputPngFile.getAbsolutePath());
+            RenderedImage colorImage = RenderPipeline.colorized(image, noData, minVal, maxVal, 1, true);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            geoReference.writePngWithMetadata(colorImage, bytes);
+            long total = (long) width * height;
+            return new RenderResult(bytes.toByteArray(), "png", geoReference, validCount, total - validCount,
+                    validCount > 0 ? min : Double.NaN, validCount > 0 ? max : Double.NaN,
+                    validCount > 0 ? sum / validCount : Double.NaN);
+        });
+    }
+
+    /**
+     * 读取覆盖数据声明的 nodata（GDAL_NODATA），未声明时返回 NaN
+     */
+    static double noDataOf(GridCoverage2D coverage) {
+        NoDataContainer noData = CoverageUtilities.getNoDataProperty(coverage);
+        return noData != null ? noData.getAsSingleValue() : Double.NaN;
     }
 }
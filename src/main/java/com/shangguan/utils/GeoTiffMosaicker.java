@@ -0,0 +1,287 @@
+package com.shangguan.utils;
+
+import org.gdal.gdal.Band;
+import org.gdal.gdal.Dataset;
+import org.gdal.gdal.Driver;
+import org.gdal.gdal.WarpOptions;
+import org.gdal.gdal.gdal;
+import org.gdal.gdalconst.gdalconst;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.index.strtree.STRtree;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Vector;
+
+/**
+ * 多幅相邻 GeoTIFF 拼接为一张着色图，不需要先离线合并成一个大 TIF。
+ * <p>
+ * 先计算所有输入的并集网格（取最细分辨率），再按输出 tile 逐块处理：
+ * 通过内存中的源影像范围索引（STRtree）找出与该 tile 重叠的源，只读取重叠窗口
+ * （各源预先用 gdal.Warp 生成配准到输出网格的 VRT，窗口按需重采样，像元与输出网格严格对齐），
+ * 按优先级填充或取平均，着色后写入分块的临时 RGBA TIF，最后转为 PNG 或 COG。整个过程不会生成整幅的中间图像。
+ * 所有输入须为同一坐标系、北向上。
+ */
+public class GeoTiffMosaicker {
+
+    static {
+        GdalRuntime.ensureRegistered();
+    }
+
+    private static final int TILE = 512;
+
+    /**
+     * 重叠区域的取值方式
+     */
+    public enum Blend {
+        /** 按输入顺序，先出现的有效值优先 */
+        PRIORITY,
+        /** 所有有效值取平均 */
+        AVERAGE
+    }
+
+    private static class Source {
+        final Dataset ds;
+        final double[] gt;
+        final Envelope envelope;
+        // 配准到拼接网格后的 VRT 及其在拼接网格中的像元范围
+        Dataset aligned;
+        Band band;
+        double noData;
+        int col0, row0, cols, rows;
+
+        Source(Dataset ds) {
+            this.ds = ds;
+            this.gt = ds.GetGeoTransform();
+            double maxX = gt[0] + ds.getRasterXSize() * gt[1];
+            double minY = gt[3] + ds.getRasterYSize() * gt[5];
+            this.envelope = new Envelope(gt[0], maxX, minY, gt[3]);
+        }
+
+        /**
+         * 用 gdal.Warp 把源影像配准到拼接网格（外扩到整像元），结果为 VRT，读取时才按窗口重采样。
+         * 之后拼接网格上的任意整像元窗口都对应源影像中精确的地理范围，不会因取整产生错位。
+         */
+        void alignTo(double[] outGt, int width, int height) throws IOException {
+            double resX = outGt[1], resY = -outGt[5];
+            col0 = Math.max(0, (int) Math.floor((envelope.getMinX() - outGt[0]) / resX + 1e-9));
+            row0 = Math.max(0, (int) Math.floor((outGt[3] - envelope.getMaxY()) / resY + 1e-9));
+            int col1 = Math.min(width, (int) Math.ceil((envelope.getMaxX() - outGt[0]) / resX - 1e-9));
+            int row1 = Math.min(height, (int) Math.ceil((outGt[3] - envelope.getMinY()) / resY - 1e-9));
+            cols = col1 - col0;
+            rows = row1 - row0;
+
+            Vector<String> args = new Vector<>();
+            Collections.addAll(args, "-of", "VRT", "-r", "bilinear", "-ot", "Float32", "-dstnodata", "nan",
+                    "-te", String.valueOf(outGt[0] + col0 * resX), String.valueOf(outGt[3] - row1 * resY),
+                    String.valueOf(outGt[0] + col1 * resX), String.valueOf(outGt[3] - row0 * resY),
+                    "-ts", String.valueOf(cols), String.valueOf(rows));
+            aligned = gdal.Warp("", new Dataset[]{ds}, new WarpOptions(args));
+            if (aligned == null) {
+                throw new IOException("影像配准失败：" + gdal.GetLastErrorMsg());
+            }
+            band = aligned.GetRasterBand(1);
+            Double[] nd = new Double[1];
+            band.GetNoDataValue(nd);
+            noData = nd[0] != null ? nd[0] : Double.NaN;
+        }
+    }
+
+    /**
+     * 拼接并着色输出
+     *
+     * @param inputPaths 输入 TIF（取第 1 波段），PRIORITY 模式下靠前的优先
+     * @param outputPath 输出文件
+     * @param minVal     色带最小值
+     * @param maxVal     色带最大值
+     * @param blend      重叠区域取值方式
+     * @param format     输出 PNG（附带 .pgw/.aux.xml）或 COG
+     */
+    public static void mosaic(List<String> inputPaths, String outputPath, double minVal, double maxVal,
+                              Blend blend, TifToPngConverter.OutputFormat format) throws IOException {
+        if (inputPaths.isEmpty()) {
+            throw new IllegalArgumentException("没有输入文件");
+        }
+        List<Source> sources = new ArrayList<>();
+        File tempDir = Files.createTempDirectory("mosaic").toFile();
+        File tempTif = new File(tempDir, "mosaic_rgba.tif");
+        Dataset outDs = null;
+        DirectBufferPool pool = DirectBufferPool.getInstance();
+        ByteBuffer windowBuffer = null;
+        ByteBuffer[] rgba = new ByteBuffer[4];
+        try {
+            STRtree index = new STRtree();
+            Envelope union = new Envelope();
+            double resX = Double.MAX_VALUE, resY = Double.MAX_VALUE;
+            String projection = null;
+            for (String path : inputPaths) {
+                Dataset ds = gdal.Open(path);
+                if (ds == null) {
+                    throw new IOException("无法打开文件：" + path);
+                }
+                Source source = new Source(ds);
+                sources.add(source);
+                if (source.gt[2] != 0 || source.gt[4] != 0) {
+                    throw new UnsupportedOperationException("不支持带旋转的栅格：" + path);
+                }
+                if (projection == null) {
+                    projection = ds.GetProjection();
+                } else if (!projection.equals(ds.GetProjection())) {
+                    System.err.println("警告：坐标系与第一个输入不一致，按相同坐标系处理：" + path);
+                }
+                index.insert(source.envelope, sources.size() - 1);
+                union.expandToInclude(source.envelope);
+                resX = Math.min(resX, Math.abs(source.gt[1]));
+                resY = Math.min(resY, Math.abs(source.gt[5]));
+            }
+            index.build();
+
+            int width = (int) Math.ceil(union.getWidth() / resX);
+            int height = (int) Math.ceil(union.getHeight() / resY);
+            double[] outGt = {union.getMinX(), resX, 0, union.getMaxY(), 0, -resY};
+            for (Source source : sources) {
+                source.alignTo(outGt, width, height);
+            }
+
+            Driver tiffDriver = gdal.GetDriverByName("GTiff");
+            outDs = tiffDriver.Create(tempTif.getAbsolutePath(), width, height, 4, gdalconst.GDT_Byte,
+                    new String[]{"TILED=YES", "BLOCKXSIZE=" + TILE, "BLOCKYSIZE=" + TILE, "COMPRESS=DEFLATE",
+                            "SPARSE_OK=TRUE", "BIGTIFF=IF_SAFER"});
+            if (outDs == null) {
+                throw new IOException("无法创建拼接临时文件：" + gdal.GetLastErrorMsg());
+            }
+            outDs.SetGeoTransform(outGt);
+            outDs.SetProjection(projection);
+            outDs.GetRasterBand(4).SetColorInterpretation(gdalconst.GCI_AlphaBand);
+
+            float[] values = new float[TILE * TILE];
+            int[] counts = new int[TILE * TILE];
+            int[] argb = new int[TILE * TILE];
+            // 源窗口与 RGBA 输出缓冲从堆外缓冲池借用，GDAL 直接读写
+            windowBuffer = pool.acquireFloats(TILE * TILE);
+            FloatBuffer window = windowBuffer.asFloatBuffer();
+            for (int b = 0; b < 4; b++) {
+                rgba[b] = pool.acquire(TILE * TILE);
+            }
+            int written = 0, skipped = 0;
+
+            for (int ty = 0; ty < height; ty += TILE) {
+                for (int tx = 0; tx < width; tx += TILE) {
+                    int tw = Math.min(TILE, width - tx);
+                    int th = Math.min(TILE, height - ty);
+                    int n = tw * th;
+                    Envelope tileEnv = new Envelope(outGt[0] + tx * resX, outGt[0] + (tx + tw) * resX,
+                            outGt[3] - (ty + th) * resY, outGt[3] - ty * resY);
+
+                    @SuppressWarnings("unchecked")
+                    List<Integer> hits = index.query(tileEnv);
+                    if (hits.isEmpty()) {
+                        skipped++;
+                        continue;
+                    }
+                    // 按输入顺序处理，保证 PRIORITY 语义
+                    hits.sort(null);
+
+                    Arrays.fill(values, 0, n, Float.NaN);
+                    Arrays.fill(counts, 0, n, 0);
+                    for (int s : hits) {
+                        readOverlap(sources.get(s), tx, ty, tw, th, windowBuffer, window, values, counts, blend);
+                    }
+                    if (blend == Blend.AVERAGE) {
+                        for (int i = 0; i < n; i++) {
+                            if (counts[i] > 1) values[i] /= counts[i];
+                        }
+                    }
+
+                    int[] pixels = NoDataColorizer.colorize(values, n, minVal, maxVal, Double.NaN, argb);
+                    if (NoDataColorizer.isEmptyTile(pixels)) {
+                        skipped++;
+                        continue;
+                    }
+                    for (int i = 0; i < n; i++) {
+                        int p = pixels[i];
+                        rgba[0].put(i, (byte) (p >> 16));
+                        rgba[1].put(i, (byte) (p >> 8));
+                        rgba[2].put(i, (byte) p);
+                        rgba[3].put(i, (byte) (p >>> 24));
+                    }
+                    for (int b = 0; b < 4; b++) {
+                        outDs.GetRasterBand(b + 1).WriteRaster_Direct(tx, ty, tw, th, tw, th, gdalconst.GDT_Byte, rgba[b]);
+                    }
+                    written++;
+                }
+            }
+            outDs.FlushCache();
+            System.out.println("拼接完成：" + width + "x" + height + "，写出 " + written + " 个 tile，跳过空 tile " + skipped + " 个");
+
+            if (format == TifToPngConverter.OutputFormat.COG) {
+                if (!CogWriter.writeCog(outDs, outputPath, null)) {
+                    throw new IOException("COG 输出失败：" + outputPath);
+                }
+            } else {
+                Dataset pngDs = gdal.GetDriverByName("PNG").CreateCopy(outputPath, outDs);
+                if (pngDs == null) {
+                    throw new IOException("PNG 输出失败：" + gdal.GetLastErrorMsg());
+                }
+                pngDs.delete();
+                new GeoReference(outGt, projection, width, height).writeSidecars(new File(outputPath));
+                System.out.println("拼接 PNG 输出成功：" + outputPath);
+            }
+        } finally {
+            pool.release(windowBuffer);
+            pool.release(rgba);
+            if (outDs != null) {
+                outDs.delete();
+                gdal.GetDriverByName("GTiff").Delete(tempTif.getAbsolutePath());
+            }
+            tempDir.delete();
+            for (Source source : sources) {
+                if (source.aligned != null) {
+                    source.aligned.delete();
+                }
+                source.ds.delete();
+            }
+        }
+    }
+
+    /**
+     * 读取源影像与 tile 重叠的窗口并合入 tile。源影像已配准到拼接网格，两边是同一组整像元，范围完全一致
+     */
+    private static void readOverlap(Source src, int tx, int ty, int tw, int th,
+                                    ByteBuffer windowBuffer, FloatBuffer window, float[] values, int[] counts, Blend blend) {
+        // 拼接网格中的重叠像元范围
+        int cx0 = Math.max(tx, src.col0), cx1 = Math.min(tx + tw, src.col0 + src.cols);
+        int cy0 = Math.max(ty, src.row0), cy1 = Math.min(ty + th, src.row0 + src.rows);
+        int ow = cx1 - cx0, oh = cy1 - cy0;
+        if (ow <= 0 || oh <= 0) {
+            return;
+        }
+        int ox0 = cx0 - tx, oy0 = cy0 - ty;
+        src.band.ReadRaster_Direct(cx0 - src.col0, cy0 - src.row0, ow, oh, ow, oh, gdalconst.GDT_Float32, windowBuffer);
+
+        for (int r = 0; r < oh; r++) {
+            int out = (oy0 + r) * tw + ox0;
+            int in = r * ow;
+            for (int c = 0; c < ow; c++, out++, in++) {
+                float v = window.get(in);
+                if (NoDataColorizer.isNoData(v, src.noData)) {
+                    continue;
+                }
+                if (counts[out] == 0) {
+                    values[out] = v;
+                    counts[out] = 1;
+                } else if (blend == Blend.AVERAGE) {
+                    values[out] += v;
+                    counts[out]++;
+                }
+            }
+        }
+    }
+}
@@ -1,8 +1,4 @@
 package com.shangguan.utils;
-import org.geotools.coverage.grid.GridCoverage2D;
-import org.geotools.coverage.grid.io.AbstractGridFormat;
-import org.geotools.coverage.grid.io.GridCoverage2DReader;
-import org.geotools.gce.geotiff.GeoTiffFormat;
 
 import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
@@ -21,28 +17,74 @@ public class GeoToolsImageCompressor {
     /**
      * 从 GeoTIFF 读取图像，并压缩保存为 JPG 或 PNG
      * @param inputTif 输入 GeoTIFF 文件路径
-     * @param outputImage 输出图片路径（支持 .jpg / .png）
-     * @param formatName 格式名称："jpg" 或 "png"
+     * @param outputImage 输出图片路径（支持 .jpg / .png / .tif）
+     * @param formatName 格式名称："jpg"、"png" 或 "cog"（保留地理参考的 Cloud-Optimized GeoTIFF）
      * @param quality 图像质量（0.0 ~ 1.0，JPG 有效）
      */
     public static void compressTifToImage(String inputTif, String outputImage, String formatName, float quality) {
+        if ("cog".equalsIgnoreCase(formatName)) {
+            CogWriter.writeCog(inputTif, outputImage, null);
+            return;
+        }
+        try {
+            File tifFile = new File(inputTif);
+            RasterAccess.getInstance().withCoverage(tifFile, coverage -> {
+                writeImage(coverage.getRenderedImage(), outputImage, formatName, quality);
+                return null;
+            });
+            System.out.println("压缩成功: " + outputImage);
+        } catch (Exception e) {
+            System.err.println("压缩失败: " + inputTif);
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 从 GeoTIFF 读取单波段指数，拉伸着色并按倍数缩小后保存为 PNG 或 JPG，同时写出地理参考附属文件。
+     * 拉伸、着色、缩小组成一条延迟计算的 JAI 算子链（见 {@link RenderPipeline}），
+     * 编码器写出时按 tile 拉取像素，不会生成整幅的中间图像。
+     * @param inputTif 输入 GeoTIFF 文件路径
+     * @param outputImage 输出图片路径
+     * @param formatName 格式名称："png" 或 "jpg"（JPG 不支持透明，nodata 输出为白色）
+     * @param quality 图像质量（0.0 ~ 1.0，JPG 有效）
+     * @param minVal 色带最小值
+     * @param maxVal 色带最大值
+     * @param factor 缩小倍数，1 表示原始尺寸
+     */
+    public static void renderColorizedImage(String inputTif, String outputImage, String formatName, float quality,
+                                            double minVal, double maxVal, int factor) {
+        boolean alpha = !("jpg".equalsIgnoreCase(formatName) || "jpeg".equalsIgnoreCase(formatName));
+        int scale = Math.max(1, factor);
         try {
             File tifFile = new File(inputTif);
-            AbstractGridFormat format = new GeoTiffFormat();
-            GridCoverage2DReader reader = format.getReader(tifFile);
-            GridCoverage2D coverage = reader.read(null);
-            RenderedImage image = coverage.getRenderedImage();
+            RasterAccess.getInstance().withCoverage(tifFile, coverage -> {
+                RenderedImage image = RenderPipeline.colorized(coverage.getRenderedImage(),
+                        GeoTiffColorRenderer.noDataOf(coverage), minVal, maxVal, scale, alpha);
+                writeImage(image, outputImage, formatName, quality);
+                // SubsampleAverage 对不能整除的宽高向下取整，按倍数换算像元尺寸，原点不变
+                GeoReference.fromCoverage(coverage).scaledBy(scale, image.getWidth(), image.getHeight())
+                        .writeSidecars(new File(outputImage));
+                return null;
+            });
+            System.out.println("着色输出成功: " + outputImage);
+        } catch (Exception e) {
+            System.err.println("着色输出失败: " + inputTif);
+            e.printStackTrace();
+        }
+    }
 
-            File outFile = new File(outputImage);
-            try (FileOutputStream fos = new FileOutputStream(outFile);
-                 ImageOutputStream ios = ImageIO.createImageOutputStream(fos)) {
+    private static void writeImage(RenderedImage image, String outputImage, String formatName, float quality) throws Exception {
+        File outFile = new File(outputImage);
+        try (FileOutputStream fos = new FileOutputStream(outFile);
+             ImageOutputStream ios = ImageIO.createImageOutputStream(fos)) {
 
-                Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(formatName);
-                if (!writers.hasNext()) {
-                    throw new IllegalStateException("No writers found for format: " + formatName);
-                }
+            Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(formatName);
+            if (!writers.hasNext()) {
+                throw new IllegalStateException("No writers found for format: " + formatName);
+            }
 
-                ImageWriter writer = writers.next();
+            ImageWriter writer = writers.next();
+            try {
                 writer.setOutput(ios);
 
                 ImageWriteParam param = writer.getDefaultWriteParam();
@@ -52,12 +94,9 @@ public class GeoToolsImageCompressor {
                 }
 
                 writer.write(null, new IIOImage(image, null, null), param);
+            } finally {
                 writer.dispose();
-                System.out.println("压缩成功: " + outputImage);
             }
-        } catch (Exception e) {
-            System.err.println("压缩失败: " + inputTif);
-            e.printStackTrace();
         }
     }
 
@@ -0,0 +1,190 @@
+package com.shangguan.utils;
+
+import org.gdal.gdal.Band;
+import org.gdal.gdal.Dataset;
+import org.gdal.gdal.Driver;
+import org.gdal.gdal.gdal;
+import org.gdal.gdalconst.gdalconst;
+import org.gdal.ogr.DataSource;
+import org.gdal.ogr.Feature;
+import org.gdal.ogr.FieldDefn;
+import org.gdal.ogr.Layer;
+import org.gdal.ogr.ogr;
+import org.gdal.osr.SpatialReference;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Vector;
+
+/**
+ * 指数图分级矢量化：按色带断点把波段分成低/中/高等级，生成等级分区多边形并写出 Shapefile。
+ * <p>
+ * 分级结果按块写入磁盘上的分块压缩临时 TIF，不在内存中保存整幅分级网格；
+ * 可选按最小面积做碎斑过滤（SieveFilter）；矢量化使用 GDAL 的 Polygonize，
+ * 它逐行扫描并跨块拼接多边形，内存只与行宽有关，并把多边形直接写入 OGR 的 Shapefile 图层，
+ * 矢量结果不经过内存中的列表，4 万 × 4 万像元的栅格也可处理。
+ */
+public class IndexPolygonizer {
+
+    static {
+        GdalRuntime.ensureRegistered();
+    }
+
+    // 分级时每次读取的窗口边长
+    private static final int WINDOW = 512;
+
+    /**
+     * 用与色带相同的断点对指数图分级并矢量化
+     *
+     * @param inputPath 输入指数 TIF（取第 1 波段）
+     * @param outputShp 输出 shp
+     * @param minVal    色带最小值
+     * @param maxVal    色带最大值
+     * @param minArea   最小图斑面积（坐标单位的平方），小于它的图斑并入相邻等级，0 表示不过滤
+     * @return 生成的多边形数
+     */
+    public static int polygonize(String inputPath, File outputShp, double minVal, double maxVal, double minArea) throws IOException {
+        return polygonize(inputPath, outputShp, ColorMapper.breaks(minVal, maxVal), minArea);
+    }
+
+    /**
+     * 按自定义断点对指数图分级并矢量化。等级从 1 开始：v &lt; breaks[0] 为 1，依次递增；nodata 不输出。
+     *
+     * @param inputPath 输入指数 TIF（取第 1 波段）
+     * @param outputShp 输出 shp
+     * @param breaks    升序断点
+     * @param minArea   最小图斑面积（坐标单位的平方），0 表示不过滤
+     * @return 生成的多边形数
+     */
+    public static int polygonize(String inputPath, File outputShp, double[] breaks, double minArea) throws IOException {
+        Dataset inDs = gdal.Open(inputPath);
+        if (inDs == null) {
+            throw new IOException("无法打开文件：" + inputPath);
+        }
+        File tempDir = Files.createTempDirectory("polygonize").toFile();
+        File classFile = new File(tempDir, "classes.tif");
+        Dataset classDs = null;
+        DataSource shpSource = null;
+        try {
+            classDs = classify(inDs, classFile, breaks);
+            Band classBand = classDs.GetRasterBand(1);
+            double[] gt = inDs.GetGeoTransform();
+
+            if (minArea > 0) {
+                int threshold = (int) Math.ceil(minArea / Math.abs(gt[1] * gt[5]));
+                if (threshold > 1) {
+                    // 原地过滤，0 值（nodata）作为掩膜不参与
+                    gdal.SieveFilter(classBand, classBand.GetMaskBand(), classBand, threshold, 8);
+                }
+            }
+
+            SpatialReference srs = new SpatialReference(inDs.GetProjection());
+            org.gdal.ogr.Driver shpDriver = ogr.GetDriverByName("ESRI Shapefile");
+            if (shpDriver == null) {
+                throw new IOException("GDAL 未注册 ESRI Shapefile 驱动");
+            }
+            if (outputShp.exists()) {
+                shpDriver.DeleteDataSource(outputShp.getAbsolutePath());
+            }
+            shpSource = shpDriver.CreateDataSource(outputShp.getAbsolutePath());
+            if (shpSource == null) {
+                throw new IOException("无法创建Shapefile：" + gdal.GetLastErrorMsg());
+            }
+            String layerName = outputShp.getName().replaceFirst("(?i)\\.shp$", "");
+            Layer layer = shpSource.CreateLayer(layerName, srs, ogr.wkbPolygon, new Vector<>(Collections.singletonList("ENCODING=UTF-8")));
+            layer.CreateField(new FieldDefn("class", ogr.OFTInteger));
+            FieldDefn areaField = new FieldDefn("area", ogr.OFTReal);
+            areaField.SetWidth(24);
+            areaField.SetPrecision(6);
+            layer.CreateField(areaField);
+            // Polygonize 逐个多边形写入 shp 图层，不在内存中保留矢量结果
+            gdal.Polygonize(classBand, classBand.GetMaskBand(), layer, 0, new Vector<>());
+
+            int count = fillAreas(layer);
+            shpSource.FlushCache();
+            System.out.println("分级矢量化完成：" + count + " 个图斑 -> " + outputShp.getAbsolutePath());
+            return count;
+        } finally {
+            if (shpSource != null) shpSource.delete();
+            if (classDs != null) classDs.delete();
+            inDs.delete();
+            gdal.GetDriverByName("GTiff").Delete(classFile.getAbsolutePath());
+            tempDir.delete();
+        }
+    }
+
+    /**
+     * 按块分级写入临时 TIF（Byte，0 为 nodata）
+     */
+    private static Dataset classify(Dataset inDs, File classFile, double[] breaks) throws IOException {
+        int width = inDs.getRasterXSize();
+        int height = inDs.getRasterYSize();
+        Band band = inDs.GetRasterBand(1);
+        Double[] nd = new Double[1];
+        band.GetNoDataValue(nd);
+        double noData = nd[0] != null ? nd[0] : Double.NaN;
+
+        Driver tiffDriver = gdal.GetDriverByName("GTiff");
+        Dataset classDs = tiffDriver.Create(classFile.getAbsolutePath(), width, height, 1, gdalconst.GDT_Byte,
+                new String[]{"TILED=YES", "COMPRESS=DEFLATE", "BIGTIFF=IF_SAFER"});
+        if (classDs == null) {
+            throw new IOException("无法创建分级临时文件：" + gdal.GetLastErrorMsg());
+        }
+        classDs.SetGeoTransform(inDs.GetGeoTransform());
+        classDs.SetProjection(inDs.GetProjection());
+        Band classBand = classDs.GetRasterBand(1);
+        classBand.SetNoDataValue(0);
+
+        float[] values = new float[WINDOW * WINDOW];
+        byte[] classes = new byte[WINDOW * WINDOW];
+        for (int y0 = 0; y0 < height; y0 += WINDOW) {
+            for (int x0 = 0; x0 < width; x0 += WINDOW) {
+                int w = Math.min(WINDOW, width - x0);
+                int h = Math.min(WINDOW, height - y0);
+                int n = w * h;
+                band.ReadRaster(x0, y0, w, h, values);
+                if (NoDataColorizer.isAllNoData(values, n, noData)) {
+                    continue;
+                }
+                for (int i = 0; i < n; i++) {
+                    float v = values[i];
+                    if (NoDataColorizer.isNoData(v, noData)) {
+                        classes[i] = 0;
+                        continue;
+                    }
+                    int cls = 1;
+                    while (cls <= breaks.length && v >= breaks[cls - 1]) {
+                        cls++;
+                    }
+                    classes[i] = (byte) cls;
+                }
+                classBand.WriteRaster(x0, y0, w, h, classes);
+            }
+        }
+        classBand.FlushCache();
+        return classDs;
+    }
+
+    /**
+     * 逐个要素回填面积字段，dbf 定长行原地改写
+     */
+    private static int fillAreas(Layer layer) {
+        int areaIndex = layer.GetLayerDefn().GetFieldIndex("area");
+        int count = 0;
+        layer.ResetReading();
+        Feature feature;
+        while ((feature = layer.GetNextFeature()) != null) {
+            try {
+                org.gdal.ogr.Geometry g = feature.GetGeometryRef();
+                feature.SetField(areaIndex, g != null ? g.GetArea() : 0);
+                layer.SetFeature(feature);
+                count++;
+            } finally {
+                feature.delete();
+            }
+        }
+        return count;
+    }
+}
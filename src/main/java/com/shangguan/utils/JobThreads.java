@@ -0,0 +1,36 @@
+package com.shangguan.utils;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 任务线程的创建方式。
+ * <p>
+ * 这是 Java 8 ~ 20 使用的版本：固定大小的平台线程池。
+ * JDK 21+ 运行时会加载 src/main/java21 下的同名类（多版本 JAR），改为每个任务一个虚拟线程。
+ */
+final class JobThreads {
+
+    private JobThreads() {
+    }
+
+    /**
+     * @param namePrefix 线程名前缀
+     * @param platformThreads 平台线程池大小（虚拟线程模式下忽略）
+     */
+    static ExecutorService newJobExecutor(String namePrefix, int platformThreads) {
+        AtomicInteger seq = new AtomicInteger();
+        ThreadFactory factory = r -> {
+            Thread t = new Thread(r, namePrefix + seq.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        };
+        return Executors.newFixedThreadPool(platformThreads, factory);
+    }
+
+    static boolean isVirtual() {
+        return false;
+    }
+}
@@ -0,0 +1,70 @@
+package com.shangguan.utils;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 识别 nodata 的分块着色：nodata/NaN 输出透明像素，整块都是 nodata 时跳过着色，
+ * 直接返回共享的空 tile。
+ * <p>
+ * 无人机正射影像航线边缘往往一半以上是 nodata，这些块既不需要着色也不需要编码。
+ */
+public class NoDataColorizer {
+
+    // 按长度缓存的全透明 tile，所有调用方共享，不可修改
+    private static final ConcurrentHashMap<Integer, int[]> EMPTY_TILES = new ConcurrentHashMap<>();
+
+    /**
+     * 共享的全透明 tile（只读）
+     */
+    public static int[] emptyTile(int length) {
+        return EMPTY_TILES.computeIfAbsent(length, int[]::new);
+    }
+
+    /**
+     * 是否为共享空 tile
+     */
+    public static boolean isEmptyTile(int[] tile) {
+        return tile != null && tile == EMPTY_TILES.get(tile.length);
+    }
+
+    /**
+     * @param noData 波段声明的 nodata，未声明时传 NaN
+     */
+    public static boolean isNoData(float value, double noData) {
+        return Float.isNaN(value) || value == (float) noData;
+    }
+
+    /**
+     * 前 length 个值是否全部为 nodata
+     */
+    public static boolean isAllNoData(float[] values, int length, double noData) {
+        for (int i = 0; i < length; i++) {
+            if (!isNoData(values[i], noData)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 对一块数据着色
+     * @param values 波段值
+     * @param length 有效长度
+     * @param min 色带最小值
+     * @param max 色带最大值
+     * @param noData 波段声明的 nodata，未声明时传 NaN
+     * @param out 输出的 ARGB 缓冲区，长度不小于 length；为 null 时新建
+     * @return ARGB 像素；整块都是 nodata 时返回 {@link #emptyTile}
+     */
+    public static int[] colorize(float[] values, int length, double min, double max, double noData, int[] out) {
+        if (isAllNoData(values, length, noData)) {
+            return emptyTile(length);
+        }
+        int[] argb = (out != null && out.length >= length) ? out : new int[length];
+        for (int i = 0; i < length; i++) {
+            float v = values[i];
+            argb[i] = isNoData(v, noData) ? ColorMapper.TRANSPARENT : ColorMapper.mapArgb(v, min, max);
+        }
+        return argb;
+    }
+}
@@ -0,0 +1,262 @@
+package com.shangguan.utils;
+
+import com.sun.media.jai.util.SunTileCache;
+import org.geotools.coverage.grid.GridCoverage2D;
+import org.geotools.coverage.grid.io.GridCoverage2DReader;
+import org.geotools.gce.geotiff.GeoTiffReader;
+
+import javax.media.jai.JAI;
+import javax.media.jai.TileCache;
+import javax.media.jai.TileScheduler;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+/**
+ * 共享的栅格访问组件：统一管理 JAI TileCache 内存预算、TileScheduler 并行度，
+ * 以及 GeoTIFF 读取器的复用与释放。
+ * <p>
+ * 之前每次调用都 new 一个 GeoTiffFormat 读取器且从不 dispose，并发时会耗尽文件句柄；
+ * JAI 默认 TileCache 也没有明确的内存上限。这里集中处理这两个问题。
+ */
+public class RasterAccess {
+
+    /** 默认 TileCache 上限：256MB 与最大堆的 1/4 取较小值 */
+    private static final long DEFAULT_TILE_CACHE_BYTES = Math.min(256L * 1024 * 1024, Runtime.getRuntime().maxMemory() / 4);
+    private static final float DEFAULT_TILE_CACHE_THRESHOLD = 0.75f;
+    private static final int DEFAULT_MAX_IDLE_READERS = 16;
+    private static final int DEFAULT_MAX_OPEN_READERS = 64;
+
+    private static final RasterAccess INSTANCE = new RasterAccess(DEFAULT_MAX_IDLE_READERS, DEFAULT_MAX_OPEN_READERS);
+
+    static {
+        configureTileCache(DEFAULT_TILE_CACHE_BYTES, DEFAULT_TILE_CACHE_THRESHOLD);
+        int cpus = Runtime.getRuntime().availableProcessors();
+        configureTileScheduler(cpus, Math.max(1, cpus / 2));
+    }
+
+    /**
+     * 读取覆盖数据后的回调
+     */
+    public interface CoverageCallback<T> {
+        T apply(GridCoverage2D coverage) throws Exception;
+    }
+
+    /**
+     * TileCache 占用情况
+     */
+    public static class CacheStats {
+        public final long memoryCapacity;
+        public final long memoryUsed;
+        public final long tileCount;
+        public final long hitCount;
+        public final long missCount;
+        public final int idleReaders;
+        public final int openReaders;
+
+        CacheStats(long memoryCapacity, long memoryUsed, long tileCount, long hitCount, long missCount,
+                   int idleReaders, int openReaders) {
+            this.memoryCapacity = memoryCapacity;
+            this.memoryUsed = memoryUsed;
+            this.tileCount = tileCount;
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.idleReaders = idleReaders;
+            this.openReaders = openReaders;
+        }
+
+        @Override
+        public String toString() {
+            return "TileCache " + (memoryUsed >> 20) + "MB/" + (memoryCapacity >> 20) + "MB, tiles=" + tileCount
+                    + ", hit=" + hitCount + ", miss=" + missCount
+                    + ", readers idle=" + idleReaders + " open=" + openReaders;
+        }
+    }
+
+    // key 为文件规范路径，value 为该文件当前空闲的读取器；按访问顺序排列，便于淘汰最久未用的
+    private final LinkedHashMap<String, Deque<GridCoverage2DReader>> idleReaders = new LinkedHashMap<>(16, 0.75f, true);
+    private final int maxIdleReaders;
+    private final Semaphore openPermits;
+    private final int maxOpenReaders;
+    private int idleCount;
+
+    RasterAccess(int maxIdleReaders, int maxOpenReaders) {
+        this.maxIdleReaders = maxIdleReaders;
+        this.maxOpenReaders = maxOpenReaders;
+        this.openPermits = new Semaphore(maxOpenReaders, true);
+    }
+
+    public static RasterAccess getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 设置全局 JAI TileCache 的内存预算
+     * @param memoryCapacity 最大字节数
+     * @param memoryThreshold 超限时清理到容量的比例（0.0 ~ 1.0）
+     */
+    public static void configureTileCache(long memoryCapacity, float memoryThreshold) {
+        TileCache cache = JAI.getDefaultInstance().getTileCache();
+        cache.setMemoryCapacity(memoryCapacity);
+        cache.setMemoryThreshold(memoryThreshold);
+    }
+
+    /**
+     * 设置全局 JAI TileScheduler 并行度
+     * @param parallelism 计算 tile 的线程数
+     * @param prefetchParallelism 预取 tile 的线程数
+     */
+    public static void configureTileScheduler(int parallelism, int prefetchParallelism) {
+        TileScheduler scheduler = JAI.getDefaultInstance().getTileScheduler();
+        scheduler.setParallelism(parallelism);
+        scheduler.setPrefetchParallelism(prefetchParallelism);
+    }
+
+    /**
+     * 借出一个 GeoTIFF 读取器，用完必须调用 {@link #returnReader} 归还
+     */
+    public GridCoverage2DReader borrowReader(File tifFile) throws IOException {
+        String key = tifFile.getCanonicalPath();
+        synchronized (this) {
+            Deque<GridCoverage2DReader> idle = idleReaders.get(key);
+            if (idle != null && !idle.isEmpty()) {
+                idleCount--;
+                GridCoverage2DReader reader = idle.poll();
+                if (idle.isEmpty()) {
+                    idleReaders.remove(key);
+                }
+                return reader;
+            }
+        }
+
+        try {
+            openPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("等待读取器时被中断: " + tifFile.getAbsolutePath(), e);
+        }
+        try {
+            return new GeoTiffReader(tifFile);
+        } catch (IOException | RuntimeException e) {
+            openPermits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * 归还读取器；空闲数超过上限时释放最久未用的读取器
+     */
+    public void returnReader(File tifFile, GridCoverage2DReader reader) throws IOException {
+        if (reader == null) return;
+        String key = tifFile.getCanonicalPath();
+        List<GridCoverage2DReader> evicted = new ArrayList<>();
+        synchronized (this) {
+            idleReaders.computeIfAbsent(key, k -> new ArrayDeque<>()).push(reader);
+            idleCount++;
+            Iterator<Map.Entry<String, Deque<GridCoverage2DReader>>> it = idleReaders.entrySet().iterator();
+            while (idleCount > maxIdleReaders && it.hasNext()) {
+                Deque<GridCoverage2DReader> oldest = it.next().getValue();
+                while (idleCount > maxIdleReaders && !oldest.isEmpty()) {
+                    evicted.add(oldest.pollLast());
+                    idleCount--;
+                }
+                if (oldest.isEmpty()) {
+                    it.remove();
+                }
+            }
+        }
+        for (GridCoverage2DReader r : evicted) {
+            disposeReader(r);
+        }
+    }
+
+    /**
+     * 读取器出错后不要归还，直接丢弃
+     */
+    public void discardReader(GridCoverage2DReader reader) {
+        if (reader != null) {
+            disposeReader(reader);
+        }
+    }
+
+    /**
+     * 读取整幅覆盖数据并回调，结束后释放覆盖数据并归还读取器
+     */
+    public <T> T withCoverage(File tifFile, CoverageCallback<T> callback) throws Exception {
+        GridCoverage2DReader reader = borrowReader(tifFile);
+        GridCoverage2D coverage = null;
+        boolean ok = false;
+        try {
+            coverage = reader.read(null);
+            T result = callback.apply(coverage);
+            ok = true;
+            return result;
+        } finally {
+            if (coverage != null) {
+                // 释放底层 ImageRead 持有的文件流
+                coverage.dispose(true);
+            }
+            if (ok) {
+                returnReader(tifFile, reader);
+            } else {
+                discardReader(reader);
+            }
+        }
+    }
+
+    /**
+     * 当前 TileCache 与读取器占用情况
+     */
+    public CacheStats getCacheStats() {
+        TileCache cache = JAI.getDefaultInstance().getTileCache();
+        long used = -1, tiles = -1, hits = -1, misses = -1;
+        if (cache instanceof SunTileCache) {
+            SunTileCache sunCache = (SunTileCache) cache;
+            used = sunCache.getCacheMemoryUsed();
+            tiles = sunCache.getCacheTileCount();
+            hits = sunCache.getCacheHitCount();
+            misses = sunCache.getCacheMissCount();
+        }
+        int idle;
+        synchronized (this) {
+            idle = idleCount;
+        }
+        int open = maxOpenReaders - openPermits.availablePermits();
+        return new CacheStats(cache.getMemoryCapacity(), used, tiles, hits, misses, idle, open);
+    }
+
+    /**
+     * 释放所有空闲读取器并清空 TileCache
+     */
+    public void clear() {
+        List<GridCoverage2DReader> all = new ArrayList<>();
+        synchronized (this) {
+            for (Deque<GridCoverage2DReader> idle : idleReaders.values()) {
+                all.addAll(idle);
+            }
+            idleReaders.clear();
+            idleCount = 0;
+        }
+        for (GridCoverage2DReader reader : all) {
+            disposeReader(reader);
+        }
+        JAI.getDefaultInstance().getTileCache().flush();
+    }
+
+    private void disposeReader(GridCoverage2DReader reader) {
+        try {
+            reader.dispose();
+        } catch (Exception e) {
+            System.err.println("释放读取器失败: " + e.getMessage());
+        } finally {
+            openPermits.release();
+        }
+    }
+}
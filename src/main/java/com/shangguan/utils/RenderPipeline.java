@@ -0,0 +1,153 @@
+package com.shangguan.utils;
+
+import javax.media.jai.ImageLayout;
+import javax.media.jai.JAI;
+import javax.media.jai.LookupTableJAI;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.RenderedImage;
+import java.awt.image.renderable.ParameterBlock;
+
+/**
+ * 延迟执行的 JAI 出图链：取波段 → 转浮点 → nodata 置 NaN → 线性拉伸 → 缩小 → 转字节 → 查色表。
+ * <p>
+ * 每一步只是在算子图上加一个节点，不计算像素；编码器按行/按 tile 拉取时才逐块计算，
+ * 中间结果不会生成整幅图像。拉伸把 [min, max] 映射到 1..255，nodata 和 NaN 在转字节时变为 0，
+ * 色表中 0 号为透明（JPEG 等不支持透明的格式为白色），其余与 {@link ColorMapper} 色带一致。
+ */
+public class RenderPipeline {
+
+    private RenderedImage image;
+
+    private RenderPipeline(RenderedImage source) {
+        this.image = source;
+    }
+
+    public static RenderPipeline from(RenderedImage source) {
+        return new RenderPipeline(source);
+    }
+
+    /**
+     * 着色出图的完整链路
+     *
+     * @param source  单波段或多波段（取第 1 波段）的源图像
+     * @param noData  nodata 值，NaN 表示未声明
+     * @param min     色带最小值
+     * @param max     色带最大值
+     * @param factor  缩小倍数，1 表示不缩小
+     * @param alpha   是否输出带透明通道的 RGBA
+     */
+    public static RenderedImage colorized(RenderedImage source, double noData, double min, double max, int factor, boolean alpha) {
+        return from(source).band(0).toFloat().noDataToNaN(noData).stretch(min, max)
+                .subsample(factor).toByte().colorize(min, max, alpha).build();
+    }
+
+    /**
+     * 只保留一个波段
+     */
+    public RenderPipeline band(int band) {
+        if (image.getSampleModel().getNumBands() > 1) {
+            ParameterBlock pb = new ParameterBlock().addSource(image).add(new int[]{band});
+            image = JAI.create("BandSelect", pb);
+        }
+        return this;
+    }
+
+    public RenderPipeline toFloat() {
+        return format(DataBuffer.TYPE_FLOAT);
+    }
+
+    public RenderPipeline toByte() {
+        return format(DataBuffer.TYPE_BYTE);
+    }
+
+    /**
+     * nodata 像素替换为 NaN，须在 {@link #toFloat()} 之后调用
+     */
+    public RenderPipeline noDataToNaN(double noData) {
+        if (!Double.isNaN(noData)) {
+            double v = (float) noData;
+            ParameterBlock pb = new ParameterBlock().addSource(image)
+                    .add(new double[]{v}).add(new double[]{v}).add(new double[]{Double.NaN});
+            image = JAI.create("Threshold", pb);
+        }
+        return this;
+    }
+
+    /**
+     * 把 [min, max] 线性映射到 [1, 255] 并截断，NaN 保持不变
+     */
+    public RenderPipeline stretch(double min, double max) {
+        double range = max - min == 0 ? 1 : max - min;
+        double scale = 254.0 / range;
+        double offset = 1 - min * scale;
+        ParameterBlock rescale = new ParameterBlock().addSource(image)
+                .add(new double[]{scale}).add(new double[]{offset});
+        image = JAI.create("Rescale", rescale);
+        ParameterBlock clamp = new ParameterBlock().addSource(image)
+                .add(new double[]{1}).add(new double[]{255});
+        image = JAI.create("Clamp", clamp);
+        return this;
+    }
+
+    /**
+     * 按块平均缩小；在转字节之前调用时，含 NaN 的块结果仍为 NaN，nodata 边缘保持透明
+     */
+    public RenderPipeline subsample(int factor) {
+        if (factor > 1) {
+            double scale = 1.0 / factor;
+            ParameterBlock pb = new ParameterBlock().addSource(image).add(scale).add(scale);
+            image = JAI.create("SubsampleAverage", pb);
+        }
+        return this;
+    }
+
+    /**
+     * 查色表着色：0 号为 nodata，1..255 对应色带 [min, max]
+     *
+     * @param alpha true 输出 RGBA，false 输出 RGB（nodata 为白色）
+     */
+    public RenderPipeline colorize(double min, double max, boolean alpha) {
+        int bands = alpha ? 4 : 3;
+        byte[][] table = new byte[bands][256];
+        for (int i = 0; i < 256; i++) {
+            int argb;
+            if (i == 0) {
+                argb = alpha ? ColorMapper.TRANSPARENT : 0xFFFFFFFF;
+            } else {
+                argb = ColorMapper.mapArgb(min + (i - 1) / 254.0 * (max - min), min, max);
+            }
+            table[0][i] = (byte) (argb >> 16);
+            table[1][i] = (byte) (argb >> 8);
+            table[2][i] = (byte) argb;
+            if (alpha) {
+                table[3][i] = (byte) (argb >>> 24);
+            }
+        }
+
+        ColorModel colorModel = new ComponentColorModel(ColorSpace.getInstance(ColorSpace.CS_sRGB), alpha, false,
+                alpha ? Transparency.TRANSLUCENT : Transparency.OPAQUE, DataBuffer.TYPE_BYTE);
+        ImageLayout layout = new ImageLayout()
+                .setColorModel(colorModel)
+                .setSampleModel(colorModel.createCompatibleSampleModel(image.getTileWidth(), image.getTileHeight()));
+        ParameterBlock pb = new ParameterBlock().addSource(image).add(new LookupTableJAI(table));
+        image = JAI.create("Lookup", pb, new RenderingHints(JAI.KEY_IMAGE_LAYOUT, layout));
+        return this;
+    }
+
+    public RenderedImage build() {
+        return image;
+    }
+
+    private RenderPipeline format(int dataType) {
+        if (image.getSampleModel().getDataType() != dataType) {
+            ParameterBlock pb = new ParameterBlock().addSource(image).add(dataType);
+            image = JAI.create("Format", pb);
+        }
+        return this;
+    }
+}
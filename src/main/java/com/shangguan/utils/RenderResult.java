@@ -0,0 +1,72 @@
+package com.shangguan.utils;
+
+/**
+ * 一次渲染的完整结果：图片字节、地理参考（范围 + CRS）和像元统计，
+ * 在同一次读取中算出，调用方不必为了读头信息再打开一遍原始 TIF。
+ */
+public class RenderResult {
+
+    private final byte[] imageBytes;
+    private final String format;
+    private final GeoReference geoReference;
+    private final long validCount;
+    private final long noDataCount;
+    private final double min;
+    private final double max;
+    private final double mean;
+
+    public RenderResult(byte[] imageBytes, String format, GeoReference geoReference,
+                        long validCount, long noDataCount, double min, double max, double mean) {
+        this.imageBytes = imageBytes;
+        this.format = format;
+        this.geoReference = geoReference;
+        this.validCount = validCount;
+        this.noDataCount = noDataCount;
+        this.min = min;
+        this.max = max;
+        this.mean = mean;
+    }
+
+    public byte[] getImageBytes() {
+        return imageBytes;
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    public GeoReference getGeoReference() {
+        return geoReference;
+    }
+
+    /**
+     * 外包范围 [minX, minY, maxX, maxY]
+     */
+    public double[] getBounds() {
+        return geoReference.getBounds();
+    }
+
+    public String getCrsWkt() {
+        return geoReference.getCrsWkt();
+    }
+
+    public long getValidCount() {
+        return validCount;
+    }
+
+    public long getNoDataCount() {
+        return noDataCount;
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+}
@@ -0,0 +1,47 @@
+package com.shangguan.utils;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 启动预热。服务启动后调用 {@link #warmUpAsync(boolean)}，在后台线程完成 GDAL 驱动注册、常用坐标系解析、
+ * JAI TileCache 配置，可选加载完整的 EPSG 工厂，让第一个请求不再承担这些初始化开销。
+ * 预热期间到达的请求不需要等待：各组件本身都是按需初始化的，预热只是把这一步提前。
+ */
+public final class Startup {
+
+    private static volatile CompletableFuture<Void> warmUp;
+
+    private Startup() {
+    }
+
+    /**
+     * 在后台守护线程上预热，重复调用返回同一个 Future
+     *
+     * @param loadEpsgFactory 是否同时加载完整的 EPSG 工厂（会用到内置表以外的坐标系时开启）
+     */
+    public static synchronized CompletableFuture<Void> warmUpAsync(boolean loadEpsgFactory) {
+        if (warmUp == null) {
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            Thread thread = new Thread(() -> {
+                long start = System.currentTimeMillis();
+                try {
+                    GdalRuntime.ensureRegistered();
+                    CrsRegistry.preload();
+                    RasterAccess.getInstance();
+                    if (loadEpsgFactory) {
+                        CrsRegistry.loadEpsgFactory();
+                    }
+                    System.out.println("启动预热完成，用时 " + (System.currentTimeMillis() - start) + " ms");
+                    future.complete(null);
+                } catch (Throwable t) {
+                    System.err.println("启动预热失败：" + t.getMessage());
+                    future.completeExceptionally(t);
+                }
+            }, "startup-warmup");
+            thread.setDaemon(true);
+            thread.start();
+            warmUp = future;
+        }
+        return warmUp;
+    }
+}
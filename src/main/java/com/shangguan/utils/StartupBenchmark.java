@@ -0,0 +1,61 @@
+package com.shangguan.utils;
+
+import org.gdal.gdal.Dataset;
+import org.gdal.gdal.gdal;
+import org.geotools.referencing.CRS;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+/**
+ * 冷启动耗时基准。每次测量都需要一个全新的 JVM，按模式分别运行：
+ * <pre>
+ *   java -cp ... com.shangguan.utils.StartupBenchmark fast      # GdalRuntime（关闭插件扫描 + 注销白名单外驱动）+ 内置坐标系
+ *   java -cp ... com.shangguan.utils.StartupBenchmark nopath    # 只关闭插件扫描的 gdal.AllRegister + CRS.decode
+ *   java -cp ... com.shangguan.utils.StartupBenchmark baseline  # gdal.AllRegister + CRS.decode
+ * </pre>
+ * Java 绑定无法单独注册驱动，fast 模式同样执行完整的 AllRegister，再加一轮注销；
+ * fast 与 nopath 的差值即注销的开销，nopath 与 baseline 的差值即关闭插件扫描的收益。
+ * 可选第二个参数为输入 TIF，用于额外测量首次 gdal.Open 的耗时（驱动少时格式探测更快）。
+ */
+public class StartupBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        String mode = args.length > 0 ? args[0] : "fast";
+        long jvmStart = System.currentTimeMillis();
+
+        long t0 = System.nanoTime();
+        boolean fast = "fast".equals(mode);
+        if (fast) {
+            GdalRuntime.ensureRegistered();
+        } else {
+            if ("nopath".equals(mode)) {
+                gdal.SetConfigOption("GDAL_DRIVER_PATH", "disable");
+            }
+            gdal.AllRegister();
+        }
+        long t1 = System.nanoTime();
+
+        CoordinateReferenceSystem crs = fast ? CrsRegistry.decode("EPSG:4326") : CRS.decode("EPSG:4326");
+        long t2 = System.nanoTime();
+
+        long openNanos = -1;
+        if (args.length > 1) {
+            long t3 = System.nanoTime();
+            Dataset ds = gdal.Open(args[1]);
+            openNanos = System.nanoTime() - t3;
+            if (ds != null) {
+                ds.delete();
+            }
+        }
+
+        System.out.println("模式: " + mode);
+        System.out.println("GDAL 驱动注册: " + (t1 - t0) / 1_000_000 + " ms，驱动数 " + gdal.GetDriverCount());
+        if (fast) {
+            System.out.println("  其中 AllRegister " + GdalRuntime.getRegisterMillis() + " ms，注销 " + GdalRuntime.getPruneMillis() + " ms");
+        }
+        System.out.println("EPSG:4326 解析: " + (t2 - t1) / 1_000_000 + " ms (" + crs.getName() + ")");
+        if (openNanos >= 0) {
+            System.out.println("首次 gdal.Open: " + openNanos / 1_000_000 + " ms");
+        }
+        System.out.println("合计: " + (System.currentTimeMillis() - jvmStart) + " ms");
+    }
+}
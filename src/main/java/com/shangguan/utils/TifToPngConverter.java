@@ -1,19 +1,48 @@
 package com.shangguan.utils;
+import org.gdal.gdal.Band;
 import org.gdal.gdal.Dataset;
 import org.gdal.gdal.Driver;
+import org.gdal.gdal.TranslateOptions;
 import org.gdal.gdal.gdal;
 import org.gdal.gdalconst.gdalconst;
+import java.awt.image.BufferedImage;
 import java.io.BufferedInputStream;
 import java.io.FileOutputStream;
 import java.io.File;
+import java.io.IOException;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.file.Files;
+import java.util.Vector;
 
 import java.io.File;
 
 public class TifToPngConverter {
 
     static {
-        gdal.AllRegister();
+        GdalRuntime.ensureRegistered();
+    }
+
+    /**
+     * 输出格式：PNG 或带地理参考的 Cloud-Optimized GeoTIFF
+     */
+    public enum OutputFormat {
+        PNG, COG
+    }
+
+    /**
+     * 缩略图重采样核。只有 NEAREST 在没有金字塔时也只读取需要的像素；
+     * 其余核要用到每个源像素，没有金字塔时仍会读取整幅影像（可先用 {@link CogWriter} 生成带金字塔的 COG）
+     */
+    public enum ResampleKernel {
+        NEAREST("near"), AVERAGE("average"), BILINEAR("bilinear"), CUBIC("cubic");
+
+        private final String gdalName;
+
+        ResampleKernel(String gdalName) {
+            this.gdalName = gdalName;
+        }
     }
 
     /**
@@ -22,6 +51,16 @@ public class TifToPngConverter {
      * @param outputPath 输出 PNG 文件路径
      */
     public static void convertSingleFile(String inputPath, String outputPath) {
+        convertSingleFile(inputPath, outputPath, OutputFormat.PNG);
+    }
+
+    /**
+     * 转换单个 TIF 文件为彩色 PNG 或 COG
+     * @param inputPath 输入文件路径（本地）
+     * @param outputPath 输出文件路径
+     * @param outputFormat 输出格式
+     */
+    public static void convertSingleFile(String inputPath, String outputPath, OutputFormat outputFormat) {
         Dataset inDs = gdal.Open(inputPath);
         if (inDs == null) {
             System.err.println("无法打开文件：" + inputPath);
@@ -39,49 +78,163 @@ public class TifToPngConverter {
             return;
         }
 
-        // 读取 RGB 波段数据（前3个波段）
-        float[][] rgbFloat = new float[3][width * height];
-        byte[][] rgbByte = new byte[3][width * height];
+        // 前3个波段的 nodata 与全局最小/最大值（GDAL 统计时已排除 nodata 和 NaN）。
+        // 优先用文件中已有的统计，没有时按金字塔或抽样块近似计算，不为拉伸再完整读一遍影像；
+        // 近似值略窄时超出部分在拉伸时截断到 0/255
+        double[] noData = new double[3];
         float min = Float.MAX_VALUE, max = -Float.MAX_VALUE;
-
         for (int b = 0; b < 3; b++) {
-            inDs.GetRasterBand(b + 1).ReadRaster(0, 0, width, height, rgbFloat[b]);
-            for (float v : rgbFloat[b]) {
-                if (!Float.isNaN(v)) {
-                    if (v < min) min = v;
-                    if (v > max) max = v;
-                }
-            }
+            Band band = inDs.GetRasterBand(b + 1);
+            Double[] nd = new Double[1];
+            band.GetNoDataValue(nd);
+            noData[b] = nd[0] != null ? nd[0] : Double.NaN;
+            double[] minMax = approxMinMax(band);
+            if (minMax[0] < min) min = (float) minMax[0];
+            if (minMax[1] > max) max = (float) minMax[1];
         }
 
         float range = (max - min == 0) ? 1 : (max - min);
 
-        for (int b = 0; b < 3; b++) {
-            for (int i = 0; i < rgbFloat[b].length; i++) {
-                float val = rgbFloat[b][i];
-                if (Float.isNaN(val)) val = min;
-                rgbByte[b][i] = (byte) Math.max(0, Math.min(255, ((val - min) / range) * 255));
+        // 输出 RGBA：nodata 像素 alpha=0；先逐块写入磁盘上的分块临时 TIF，不在内存中保存整幅图像。
+        // 整块 nodata 的分块跳过着色和写入，临时 TIF 为稀疏文件，这些分块不占磁盘、读出为 0（透明）；
+        // 输出 PNG 仍是整幅编码，透明区域只是压缩率高
+        File tempDir = null;
+        File tempTif = null;
+        Dataset rgbaDs = null;
+        // 窗口缓冲从堆外缓冲池借用，GDAL 直接读写，避免每个文件在堆上分配大数组
+        DirectBufferPool pool = DirectBufferPool.getInstance();
+        ByteBuffer[] rgbBuffers = new ByteBuffer[3];
+        FloatBuffer[] rgbFloat = new FloatBuffer[3];
+        ByteBuffer[] rgbaByte = new ByteBuffer[4];
+        int skippedBlocks = 0;
+        try {
+            tempDir = Files.createTempDirectory("tif2png").toFile();
+            tempTif = new File(tempDir, "rgba.tif");
+            rgbaDs = gdal.GetDriverByName("GTiff").Create(tempTif.getAbsolutePath(), width, height, 4, gdalconst.GDT_Byte,
+                    new String[]{"TILED=YES", "COMPRESS=DEFLATE", "BIGTIFF=IF_SAFER", "SPARSE_OK=TRUE"});
+            if (rgbaDs == null) {
+                System.err.println("无法创建临时文件：" + gdal.GetLastErrorMsg());
+                return;
             }
-        }
+            rgbaDs.SetGeoTransform(inDs.GetGeoTransform());
+            rgbaDs.SetProjection(inDs.GetProjection());
+            rgbaDs.GetRasterBand(4).SetColorInterpretation(gdalconst.GCI_AlphaBand);
 
-        Driver memDriver = gdal.GetDriverByName("MEM");
-        Driver pngDriver = gdal.GetDriverByName("PNG");
+            int[] window = processingWindow(inDs.GetRasterBand(1), width, height);
+            int winW = window[0], winH = window[1];
+            for (int b = 0; b < 3; b++) {
+                rgbBuffers[b] = pool.acquireFloats(winW * winH);
+                rgbFloat[b] = rgbBuffers[b].asFloatBuffer();
+            }
+            for (int b = 0; b < 4; b++) {
+                rgbaByte[b] = pool.acquire(winW * winH);
+            }
 
-        Dataset memDs = memDriver.Create("", width, height, 3, gdalconst.GDT_Byte);
-        for (int b = 0; b < 3; b++) {
-            memDs.GetRasterBand(b + 1).WriteRaster(0, 0, width, height, rgbByte[b]);
+            for (int y0 = 0; y0 < height; y0 += winH) {
+                for (int x0 = 0; x0 < width; x0 += winW) {
+                    int w = Math.min(winW, width - x0);
+                    int h = Math.min(winH, height - y0);
+                    int n = w * h;
+
+                    for (int b = 0; b < 3; b++) {
+                        inDs.GetRasterBand(b + 1).ReadRaster_Direct(x0, y0, w, h, w, h, gdalconst.GDT_Float32, rgbBuffers[b]);
+                    }
+
+                    boolean hasData = false;
+                    for (int i = 0; i < n; i++) {
+                        boolean valid = true;
+                        for (int b = 0; b < 3; b++) {
+                            if (NoDataColorizer.isNoData(rgbFloat[b].get(i), noData[b])) {
+                                valid = false;
+                                break;
+                            }
+                        }
+                        if (valid) {
+                            hasData = true;
+                            for (int b = 0; b < 3; b++) {
+                                rgbaByte[b].put(i, (byte) Math.max(0, Math.min(255, ((rgbFloat[b].get(i) - min) / range) * 255)));
+                            }
+                            rgbaByte[3].put(i, (byte) 255);
+                        } else {
+                            for (int b = 0; b < 4; b++) {
+                                rgbaByte[b].put(i, (byte) 0);
+                            }
+                        }
+                    }
+
+                    if (!hasData) {
+                        skippedBlocks++;
+                        continue;
+                    }
+                    for (int b = 0; b < 4; b++) {
+                        rgbaDs.GetRasterBand(b + 1).WriteRaster_Direct(x0, y0, w, h, w, h, gdalconst.GDT_Byte, rgbaByte[b]);
+                    }
+                }
+            }
+            if (skippedBlocks > 0) {
+                System.out.println("跳过全 nodata 分块的着色与写入：" + skippedBlocks + " 个");
+            }
+            rgbaDs.FlushCache();
+
+            if (outputFormat == OutputFormat.COG) {
+                // COG 保留地理参考，便于前端按 tile 范围读取
+                CogWriter.writeCog(rgbaDs, outputPath, null);
+            } else {
+                // PNG 驱动按行从临时 TIF 拉取数据编码
+                Driver pngDriver = gdal.GetDriverByName("PNG");
+                Dataset outDs = pngDriver.CreateCopy(outputPath, rgbaDs);
+                if (outDs != null) {
+                    System.out.println("彩色转换成功：" + outputPath);
+                    outDs.delete();
+                    // PNG 本身不带坐标，写 .pgw/.aux.xml 保留地理参考
+                    try {
+                        GeoReference.fromDataset(inDs).writeSidecars(new File(outputPath));
+                    } catch (IOException e) {
+                        System.err.println("地理参考文件写入失败：" + e.getMessage());
+                    }
+                } else {
+                    System.err.println("PNG 转换失败");
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("无法创建临时目录：" + e.getMessage());
+        } finally {
+            pool.release(rgbBuffers);
+            pool.release(rgbaByte);
+            if (rgbaDs != null) {
+                rgbaDs.delete();
+                gdal.GetDriverByName("GTiff").Delete(tempTif.getAbsolutePath());
+            }
+            if (tempDir != null) {
+                tempDir.delete();
+            }
+            inDs.delete();
         }
+    }
 
-        Dataset outDs = pngDriver.CreateCopy(outputPath, memDs);
-        if (outDs != null) {
-            System.out.println("彩色转换成功：" + outputPath);
-            outDs.delete();
-        } else {
-            System.err.println("PNG 转换失败");
+    /**
+     * 波段的 {最小值, 最大值}：先取已缓存的统计（.aux.xml 或文件内元数据），没有时近似计算
+     */
+    private static double[] approxMinMax(Band band) {
+        double[] min = new double[1], max = new double[1], mean = new double[1], std = new double[1];
+        if (band.GetStatistics(true, false, min, max, mean, std) == gdalconst.CE_None) {
+            return new double[]{min[0], max[0]};
         }
+        double[] minMax = new double[2];
+        band.ComputeRasterMinMax(minMax, 1);
+        return minMax;
+    }
 
-        inDs.delete();
-        memDs.delete();
+    /**
+     * 逐块处理的窗口大小：按波段的原生分块对齐，条带型 TIF（高度只有几行）合并成约 256 行一块
+     */
+    private static int[] processingWindow(Band band, int width, int height) {
+        int blockW = band.GetBlockXSize();
+        int blockH = band.GetBlockYSize();
+        if (blockH < 256) {
+            blockH = ((256 + blockH - 1) / blockH) * blockH;
+        }
+        return new int[]{Math.min(blockW, width), Math.min(blockH, height)};
     }
 
     /**
@@ -90,19 +243,136 @@ public class TifToPngConverter {
      * @param outputDir 输出目录
      */
     public static void convertBatch(String inputDir, String outputDir) {
+        convertBatch(inputDir, outputDir, OutputFormat.PNG);
+    }
+
+    /**
+     * 批量转换目录中所有 tif 文件
+     * @param inputDir 输入目录
+     * @param outputDir 输出目录
+     * @param outputFormat 输出格式
+     */
+    public static void convertBatch(String inputDir, String outputDir, OutputFormat outputFormat) {
         new File(outputDir).mkdirs();
         File[] tifFiles = new File(inputDir).listFiles((dir, name) -> name.toLowerCase().endsWith(".tif"));
         if (tifFiles == null || tifFiles.length == 0) {
             System.out.println("未找到任何 .tif 文件");
             return;
         }
+        String suffix = outputFormat == OutputFormat.COG ? "_cog.tif" : ".png";
         for (File tifFile : tifFiles) {
-            String outputPath = outputDir + File.separator + removeExtension(tifFile.getName()) + ".png";
-            convertSingleFile(tifFile.getAbsolutePath(), outputPath);
+            String outputPath = outputDir + File.separator + removeExtension(tifFile.getName()) + suffix;
+            convertSingleFile(tifFile.getAbsolutePath(), outputPath, outputFormat);
         }
         System.out.println("批量转换完成！");
     }
 
+    /**
+     * 直接从 TIF 生成缩小后的图片文件（格式由 GDAL 驱动名决定，如 PNG / JPEG）。
+     * 由 GDAL 按输出尺寸读取，不需要先把全分辨率图像解码进堆内存。
+     * 有金字塔时自动使用最接近的金字塔层；没有金字塔时只有最近邻只读需要的像素（约 1/factor² 的 I/O），
+     * AVERAGE/BILINEAR/CUBIC 仍会读取全部源像素。
+     * @param inputPath 输入 TIF
+     * @param outputPath 输出文件
+     * @param factor 缩小倍数，如 8 表示宽高各缩小为 1/8
+     * @param kernel 重采样核
+     * @return 是否成功
+     */
+    public static boolean downsampleToFile(String inputPath, String outputPath, int factor, ResampleKernel kernel) {
+        Dataset inDs = gdal.Open(inputPath);
+        if (inDs == null) {
+            System.err.println("无法打开文件：" + inputPath);
+            return false;
+        }
+        try {
+            int outW = Math.max(1, (inDs.getRasterXSize() + factor - 1) / factor);
+            int outH = Math.max(1, (inDs.getRasterYSize() + factor - 1) / factor);
+            String driverName = outputPath.toLowerCase().endsWith(".jpg") || outputPath.toLowerCase().endsWith(".jpeg") ? "JPEG" : "PNG";
+            Dataset outDs = translateDownsampled(inDs, outputPath, driverName, outW, outH, kernel);
+            if (outDs == null) {
+                System.err.println("缩略图生成失败：" + gdal.GetLastErrorMsg());
+                return false;
+            }
+            outDs.delete();
+            try {
+                GeoReference.fromDataset(inDs).scaledTo(outW, outH).writeSidecars(new File(outputPath));
+            } catch (IOException e) {
+                System.err.println("地理参考文件写入失败：" + e.getMessage());
+            }
+            System.out.println("缩略图生成成功：" + outputPath + " (" + outW + "x" + outH + ")");
+            return true;
+        } finally {
+            inDs.delete();
+        }
+    }
+
+    /**
+     * 读取缩小后的图像，直接得到 BufferedImage（1 波段灰度、3 波段 RGB、4 波段 RGBA）。
+     * 读取量与 {@link #downsampleToFile} 相同：没有金字塔时只有最近邻能少读像素
+     * @param inputPath 输入 TIF
+     * @param factor 缩小倍数
+     * @param kernel 重采样核
+     * @return 缩小后的图像，失败返回 null
+     */
+    public static BufferedImage readDownsampled(String inputPath, int factor, ResampleKernel kernel) {
+        Dataset inDs = gdal.Open(inputPath);
+        if (inDs == null) {
+            System.err.println("无法打开文件：" + inputPath);
+            return null;
+        }
+        Dataset memDs = null;
+        try {
+            int outW = Math.max(1, (inDs.getRasterXSize() + factor - 1) / factor);
+            int outH = Math.max(1, (inDs.getRasterYSize() + factor - 1) / factor);
+            memDs = translateDownsampled(inDs, "", "MEM", outW, outH, kernel);
+            if (memDs == null) {
+                System.err.println("缩略图生成失败：" + gdal.GetLastErrorMsg());
+                return null;
+            }
+
+            int bands = Math.min(4, memDs.getRasterCount());
+            byte[][] data = new byte[bands][outW * outH];
+            for (int b = 0; b < bands; b++) {
+                memDs.GetRasterBand(b + 1).ReadRaster(0, 0, outW, outH, data[b]);
+            }
+            int[] argb = new int[outW * outH];
+            for (int i = 0; i < argb.length; i++) {
+                int r = data[0][i] & 0xFF;
+                int g = bands >= 3 ? data[1][i] & 0xFF : r;
+                int bl = bands >= 3 ? data[2][i] & 0xFF : r;
+                int a = bands == 4 ? data[3][i] & 0xFF : (bands == 2 ? data[1][i] & 0xFF : 255);
+                argb[i] = (a << 24) | (r << 16) | (g << 8) | bl;
+            }
+            BufferedImage image = new BufferedImage(outW, outH, BufferedImage.TYPE_INT_ARGB);
+            image.setRGB(0, 0, outW, outH, argb, 0, outW);
+            return image;
+        } finally {
+            if (memDs != null) memDs.delete();
+            inDs.delete();
+        }
+    }
+
+    private static Dataset translateDownsampled(Dataset src, String dest, String driverName, int outW, int outH, ResampleKernel kernel) {
+        if (kernel != ResampleKernel.NEAREST && src.GetRasterBand(1).GetOverviewCount() == 0) {
+            System.out.println("影像没有金字塔，" + kernel + " 重采样将读取全部源像素");
+        }
+        Vector<String> options = new Vector<>();
+        options.add("-of");
+        options.add(driverName);
+        options.add("-outsize");
+        options.add(String.valueOf(outW));
+        options.add(String.valueOf(outH));
+        options.add("-r");
+        options.add(kernel.gdalName);
+        if (src.GetRasterBand(1).getDataType() != gdalconst.GDT_Byte) {
+            // 指数等浮点数据按最小/最大值拉伸到 8 位
+            options.add("-ot");
+            options.add("Byte");
+            options.add("-scale");
+        }
+        return gdal.Translate(dest, src, new TranslateOptions(options));
+    }
+
     private static String removeExtension(String fileName) {
         int i = fileName.lastIndexOf('.');
         return (i > 0) ? fileName.substring(0, i) : fileName;
@@ -113,8 +383,8 @@ public class TifToPngConverter {
      */
     public static String downloadTif(String urlString) throws Exception {
         URL url = new URL(urlString);
-        String tempFileName = "temp_" + System.currentTimeMillis() + ".tif";
-        File tempFile = new File(System.getProperty("java.io.tmpdir"), tempFileName);
+        // 并发下载时按时间戳命名会冲突，由系统生成唯一文件名
+        File tempFile = File.createTempFile("temp_", ".tif");
 
         try (BufferedInputStream in = new BufferedInputStream(url.openStream());
              FileOutputStream out = new FileOutputStream(tempFile)) {
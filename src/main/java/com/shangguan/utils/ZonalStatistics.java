@@ -0,0 +1,358 @@
+package com.shangguan.utils;
+
+import com.shangguan.shpUtils.ShapefileUtils2;
+import org.gdal.gdal.Band;
+import org.gdal.gdal.Dataset;
+import org.gdal.gdal.gdal;
+import org.locationtech.jts.geom.*;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 分区统计：按多边形（地块）统计指数栅格的像元数、均值、最小值、最大值、标准差。
+ * <p>
+ * 每个地块只读取其外包矩形覆盖的窗口（按行分条读取），用扫描线把多边形栅格化到像元中心，
+ * 统计量累加在按地块下标排列的基本类型数组中；地块之间并行计算，每个工作线程持有自己的 GDAL 数据集。
+ * 可以选择在金字塔层级上计算，以较低精度换取更快速度。
+ * 多边形坐标须与栅格处于同一坐标系。
+ */
+public class ZonalStatistics {
+
+    static {
+        GdalRuntime.ensureRegistered();
+    }
+
+    // 单次读取的最大像元数（按行分条）
+    private static final int STRIP_PIXELS = 1 << 20;
+
+    /**
+     * 统计结果，下标与输入的多边形列表一致
+     */
+    public static class Result {
+        private final long[] count;
+        private final double[] sum;
+        private final double[] sumSq;
+        private final double[] min;
+        private final double[] max;
+
+        Result(int zones) {
+            count = new long[zones];
+            sum = new double[zones];
+            sumSq = new double[zones];
+            min = new double[zones];
+            max = new double[zones];
+            Arrays.fill(min, Double.NaN);
+            Arrays.fill(max, Double.NaN);
+        }
+
+        public int size() {
+            return count.length;
+        }
+
+        public long getCount(int zone) {
+            return count[zone];
+        }
+
+        public double getMin(int zone) {
+            return min[zone];
+        }
+
+        public double getMax(int zone) {
+            return max[zone];
+        }
+
+        public double getMean(int zone) {
+            return count[zone] > 0 ? sum[zone] / count[zone] : Double.NaN;
+        }
+
+        public double getStdDev(int zone) {
+            if (count[zone] == 0) return Double.NaN;
+            double mean = sum[zone] / count[zone];
+            return Math.sqrt(Math.max(0, sumSq[zone] / count[zone] - mean * mean));
+        }
+
+        /**
+         * 作为 Shapefile 属性写出的字段（字段名不超过 dbf 的 10 个字符）
+         */
+        public Map<String, Object> toAttributes(int zone) {
+            Map<String, Object> attrs = new LinkedHashMap<>();
+            attrs.put("zs_count", count[zone]);
+            attrs.put("zs_mean", count[zone] > 0 ? getMean(zone) : null);
+            attrs.put("zs_min", count[zone] > 0 ? getMin(zone) : null);
+            attrs.put("zs_max", count[zone] > 0 ? getMax(zone) : null);
+            attrs.put("zs_std", count[zone] > 0 ? getStdDev(zone) : null);
+            return attrs;
+        }
+    }
+
+    /**
+     * 计算每个多边形的分区统计
+     *
+     * @param rasterPath    指数栅格路径
+     * @param bandIndex     波段号（从 1 开始）
+     * @param zones         多边形（Polygon / MultiPolygon），坐标系与栅格一致
+     * @param overviewLevel 使用的金字塔层级，-1 表示原始分辨率
+     * @param parallelism   并行线程数
+     * @return 统计结果
+     */
+    public static Result compute(String rasterPath, int bandIndex, List<? extends Geometry> zones, int overviewLevel, int parallelism) throws IOException {
+        Result result = new Result(zones.size());
+        if (zones.isEmpty()) {
+            return result;
+        }
+        int threads = Math.max(1, Math.min(parallelism, zones.size()));
+        AtomicInteger next = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    // GDAL 数据集不是线程安全的，每个线程单独打开
+                    Dataset ds = gdal.Open(rasterPath);
+                    if (ds == null) {
+                        throw new IOException("无法打开文件：" + rasterPath);
+                    }
+                    try {
+                        Grid grid = new Grid(ds, bandIndex, overviewLevel);
+                        int i;
+                        while ((i = next.getAndIncrement()) < zones.size()) {
+                            Geometry zone = zones.get(i);
+                            if (zone != null && !zone.isEmpty()) {
+                                accumulate(grid, zone, result, i);
+                            }
+                        }
+                    } finally {
+                        ds.delete();
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> f : futures) {
+                f.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("分区统计被中断", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException("分区统计失败", cause);
+        } finally {
+            for (Future<?> f : futures) {
+                f.cancel(true);
+            }
+            executor.shutdownNow();
+        }
+        return result;
+    }
+
+    /**
+     * 读取地块 Shapefile，计算分区统计后连同原属性写出为新的 Shapefile（MultiPolygon 图层）
+     *
+     * @param rasterPath    指数栅格路径
+     * @param bandIndex     波段号（从 1 开始）
+     * @param zonesShp      输入地块 shp
+     * @param outputShp     输出 shp
+     * @param overviewLevel 使用的金字塔层级，-1 表示原始分辨率
+     * @return 统计结果
+     */
+    public static Result computeToShapefile(String rasterPath, int bandIndex, File zonesShp, File outputShp, int overviewLevel) throws IOException {
+        List<SimpleFeature> features = ShapefileUtils2.readShapefile(zonesShp);
+        List<Geometry> zones = new ArrayList<>(features.size());
+        for (SimpleFeature feature : features) {
+            zones.add((Geometry) feature.getDefaultGeometry());
+        }
+        Result result = compute(rasterPath, bandIndex, zones, overviewLevel, Runtime.getRuntime().availableProcessors());
+
+        List<MultiPolygon> multiPolygons = new ArrayList<>(features.size());
+        List<Map<String, Object>> attributesList = new ArrayList<>(features.size());
+        CoordinateReferenceSystem crs = null;
+        int skipped = 0;
+        for (int i = 0; i < features.size(); i++) {
+            SimpleFeature feature = features.get(i);
+            if (crs == null) {
+                crs = feature.getFeatureType().getCoordinateReferenceSystem();
+            }
+            Geometry g = zones.get(i);
+            // 空几何在 shp 中是合法记录，但无法写入面图层，跳过而不中断整批
+            if (g == null || g.isEmpty() || !(g instanceof Polygon || g instanceof MultiPolygon)) {
+                System.err.println("地块 " + feature.getID() + " 几何为空或不是面，已跳过");
+                skipped++;
+                continue;
+            }
+            multiPolygons.add(g instanceof MultiPolygon ? (MultiPolygon) g
+                    : g.getFactory().createMultiPolygon(new Polygon[]{(Polygon) g}));
+
+            Map<String, Object> attrs = new LinkedHashMap<>();
+            for (AttributeDescriptor descriptor : feature.getFeatureType().getAttributeDescriptors()) {
+                Object value = feature.getAttribute(descriptor.getLocalName());
+                if (!(value instanceof Geometry)) {
+                    attrs.put(descriptor.getLocalName(), value);
+                }
+            }
+            attrs.putAll(result.toAttributes(i));
+            attributesList.add(attrs);
+        }
+        ShapefileUtils2.createMultiPolygonShapefile(outputShp, multiPolygons, attributesList, crs);
+        System.out.println("分区统计完成：" + multiPolygons.size() + " 个地块（跳过 " + skipped + " 个）-> " + outputShp.getAbsolutePath());
+        return result;
+    }
+
+    /**
+     * 栅格网格参数（北向上），以及当前线程的读取缓冲区
+     */
+    private static class Grid {
+        final Band band;
+        final int width;
+        final int height;
+        final double originX;
+        final double originY;
+        final double pixelW;
+        final double pixelH;
+        final double noData;
+        float[] buffer = new float[0];
+        double[] crossings = new double[64];
+
+        Grid(Dataset ds, int bandIndex, int overviewLevel) {
+            Band full = ds.GetRasterBand(bandIndex);
+            Band b = overviewLevel >= 0 && overviewLevel < full.GetOverviewCount() ? full.GetOverview(overviewLevel) : full;
+            double[] gt = ds.GetGeoTransform();
+            if (gt[2] != 0 || gt[4] != 0) {
+                throw new UnsupportedOperationException("不支持带旋转的栅格");
+            }
+            this.band = b;
+            this.width = b.getXSize();
+            this.height = b.getYSize();
+            this.originX = gt[0];
+            this.originY = gt[3];
+            // 金字塔层级按尺寸比例放大像元
+            this.pixelW = gt[1] * ds.getRasterXSize() / width;
+            this.pixelH = gt[5] * ds.getRasterYSize() / height;
+            Double[] nd = new Double[1];
+            full.GetNoDataValue(nd);
+            this.noData = nd[0] != null ? nd[0] : Double.NaN;
+        }
+    }
+
+    private static void accumulate(Grid grid, Geometry zone, Result result, int index) {
+        Envelope env = zone.getEnvelopeInternal();
+        int col0 = Math.max(0, (int) Math.floor((env.getMinX() - grid.originX) / grid.pixelW));
+        int col1 = Math.min(grid.width, (int) Math.ceil((env.getMaxX() - grid.originX) / grid.pixelW));
+        int row0 = Math.max(0, (int) Math.floor((env.getMaxY() - grid.originY) / grid.pixelH));
+        int row1 = Math.min(grid.height, (int) Math.ceil((env.getMinY() - grid.originY) / grid.pixelH));
+        if (col0 >= col1 || row0 >= row1) {
+            return;
+        }
+
+        double[] edges = collectEdges(zone);
+        int w = col1 - col0;
+        int stripRows = Math.max(1, STRIP_PIXELS / w);
+        for (int r0 = row0; r0 < row1; r0 += stripRows) {
+            int h = Math.min(stripRows, row1 - r0);
+            if (grid.buffer.length < w * h) {
+                grid.buffer = new float[w * h];
+            }
+            grid.band.ReadRaster(col0, r0, w, h, grid.buffer);
+
+            for (int r = 0; r < h; r++) {
+                double yc = grid.originY + (r0 + r + 0.5) * grid.pixelH;
+                int n = scanline(edges, yc, grid);
+                for (int k = 0; k + 1 < n; k += 2) {
+                    // 像元中心落在 [xa, xb) 内的列
+                    int cStart = (int) Math.ceil((grid.crossings[k] - grid.originX) / grid.pixelW - 0.5);
+                    int cEnd = (int) Math.ceil((grid.crossings[k + 1] - grid.originX) / grid.pixelW - 0.5);
+                    cStart = Math.max(cStart, col0);
+                    cEnd = Math.min(cEnd, col1);
+                    int rowOffset = r * w - col0;
+                    for (int c = cStart; c < cEnd; c++) {
+                        add(result, index, grid.buffer[rowOffset + c], grid.noData);
+                    }
+                }
+            }
+        }
+
+        // 地块小于一个像元、没有覆盖任何像元中心时，取内部点所在像元
+        if (result.count[index] == 0) {
+            Point p = zone.getInteriorPoint();
+            int c = (int) Math.floor((p.getX() - grid.originX) / grid.pixelW);
+            int r = (int) Math.floor((p.getY() - grid.originY) / grid.pixelH);
+            if (c >= 0 && c < grid.width && r >= 0 && r < grid.height) {
+                float[] one = new float[1];
+                grid.band.ReadRaster(c, r, 1, 1, one);
+                add(result, index, one[0], grid.noData);
+            }
+        }
+    }
+
+    private static void add(Result result, int index, float v, double noData) {
+        if (NoDataColorizer.isNoData(v, noData)) {
+            return;
+        }
+        if (result.count[index] == 0) {
+            result.min[index] = v;
+            result.max[index] = v;
+        } else {
+            if (v < result.min[index]) result.min[index] = v;
+            if (v > result.max[index]) result.max[index] = v;
+        }
+        result.count[index]++;
+        result.sum[index] += v;
+        result.sumSq[index] += (double) v * v;
+    }
+
+    /**
+     * 所有环（外环、内环、多部件）的边，按 x1,y1,x2,y2 平铺；扫描线按奇偶规则自然处理洞
+     */
+    private static double[] collectEdges(Geometry zone) {
+        int total = 0;
+        List<CoordinateSequence> rings = new ArrayList<>();
+        for (int i = 0; i < zone.getNumGeometries(); i++) {
+            Geometry part = zone.getGeometryN(i);
+            if (!(part instanceof Polygon)) continue;
+            Polygon polygon = (Polygon) part;
+            rings.add(polygon.getExteriorRing().getCoordinateSequence());
+            for (int h = 0; h < polygon.getNumInteriorRing(); h++) {
+                rings.add(polygon.getInteriorRingN(h).getCoordinateSequence());
+            }
+        }
+        for (CoordinateSequence ring : rings) {
+            total += Math.max(0, ring.size() - 1);
+        }
+        double[] edges = new double[total * 4];
+        int e = 0;
+        for (CoordinateSequence ring : rings) {
+            for (int i = 0; i + 1 < ring.size(); i++) {
+                edges[e++] = ring.getX(i);
+                edges[e++] = ring.getY(i);
+                edges[e++] = ring.getX(i + 1);
+                edges[e++] = ring.getY(i + 1);
+            }
+        }
+        return edges;
+    }
+
+    /**
+     * 计算水平线 y 与所有边的交点，排序后存入 grid.crossings，返回交点数
+     */
+    private static int scanline(double[] edges, double y, Grid grid) {
+        int n = 0;
+        for (int e = 0; e < edges.length; e += 4) {
+            double y1 = edges[e + 1], y2 = edges[e + 3];
+            if ((y1 <= y && y < y2) || (y2 <= y && y < y1)) {
+                double x1 = edges[e], x2 = edges[e + 2];
+                if (n == grid.crossings.length) {
+                    grid.crossings = Arrays.copyOf(grid.crossings, n * 2);
+                }
+                grid.crossings[n++] = x1 + (y - y1) * (x2 - x1) / (y2 - y1);
+            }
+        }
+        Arrays.sort(grid.crossings, 0, n);
+        return n;
+    }
+}
@@ -0,0 +1,21 @@
+package com.shangguan.utils;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 任务线程的创建方式（JDK 21+ 版本）：每个任务一个虚拟线程，等待网络和磁盘时不占用平台线程。
+ */
+final class JobThreads {
+
+    private JobThreads() {
+    }
+
+    static ExecutorService newJobExecutor(String namePrefix, int platformThreads) {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(namePrefix, 0).factory());
+    }
+
+    static boolean isVirtual() {
+        return true;
+    }
+}